@@ -1,11 +1,24 @@
 package cfh.zirconium;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.stream.IntStream;
 
 import cfh.zirconium.expr.Definition;
 import cfh.zirconium.net.*;
@@ -129,13 +142,44 @@ public class Compiler {
     public Program compile(String name, String code, String header) throws CompileException {
         environment.print("%n");
         
-        char[][] chars = parse(code);
+        Grid chars = parse(code);
         
         Map<Character, Definition> definitions = parseHeaderFile(header);
         
         definitions.putAll(bubblesLenses(chars));
         
-        Zone[][] zones = new ZoneDetector(chars).detect();
+        return compile(name, chars, definitions);
+    }
+    
+    /** Compiles the code in given file (UTF-8), mapping it to memory. */
+    public Program compile(String name, Path file, String header) throws CompileException, IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return compile(name, channel, header);
+        }
+    }
+    
+    /** 
+     * Compiles the code (UTF-8) read from given channel, mapped to memory if it is a file.
+     * The character grid is filled directly from the bytes, removing bubbles and lenses
+     * in the same pass; no string of the whole code is created.
+     */
+    public Program compile(String name, ReadableByteChannel source, String header) throws CompileException, IOException {
+        environment.print("%n");
+        
+        var bytes = read(source);
+        
+        Map<Character, Definition> definitions = parseHeaderFile(header);
+        
+        var lenses = new HashMap<Character, Definition>();
+        Grid chars = parse(bytes, lenses);
+        definitions.putAll(lenses);
+        
+        return compile(name, chars, definitions);
+    }
+    
+    /** Compiles a character grid, bubbles and lenses already removed. */
+    private Program compile(String name, Grid chars, Map<Character, Definition> definitions) throws CompileException {
+        Grid zones = new ZoneDetector(chars).detect();
         
         Map<Pos, Single> singles = scanStations(chars, zones, definitions);
         
@@ -143,6 +187,7 @@ public class Compiler {
         
         link(chars, singles);
         // TODO check unconnected tunnels
+        stations.forEach(Station::fix);
         
         return new Program(name, stations, environment);
     }
@@ -151,26 +196,139 @@ public class Compiler {
      * Creates a character matrix for given code. 
      * One extra empty row/column is added to each side of boundary.
      */
-    private char[][] parse(String code) {
-        var lines = code.split("\n", -1);
-        var rows = lines.length;
+    private Grid parse(String code) {
+        var rows = 1;
+        var cols = 0;
+        var length = 0;
+        for (var i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '\n') {
+                rows += 1;
+                cols = Math.max(cols, length);
+                length = 0;
+            } else {
+                length += 1;
+            }
+        }
+        cols = Math.max(cols, length);
         environment.print("%d rows%n", rows);
+        environment.print("%d columns%n", cols);
         
-        var cols = Arrays.stream(lines).mapToInt(String::length).max().orElse(0);
+        var chars = Grid.chars(rows, cols);
+        var x = 0;
+        var y = 0;
+        for (var i = 0; i < code.length(); i++) {
+            var ch = code.charAt(i);
+            if (ch == '\n') {
+                x = 0;
+                y += 1;
+            } else {
+                chars.set(x, y, ch);
+                x += 1;
+            }
+        }
+        return chars;
+    }
+    
+    /** Reads the whole channel, a file channel is mapped to memory. */
+    private static ByteBuffer read(ReadableByteChannel source) throws IOException {
+        if (source instanceof FileChannel file) {
+            var size = file.size() - file.position();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("code too big: " + size + " bytes");
+            }
+            return file.map(FileChannel.MapMode.READ_ONLY, file.position(), size);
+        }
+        var buffer = ByteBuffer.allocate(1 << 16);
+        while (source.read(buffer) >= 0) {
+            if (!buffer.hasRemaining()) {
+                if (buffer.capacity() == Integer.MAX_VALUE) {
+                    throw new IOException("code too big");
+                }
+                var bigger = ByteBuffer.allocate((int) Math.min(2L * buffer.capacity(), Integer.MAX_VALUE));
+                bigger.put(buffer.flip());
+                buffer = bigger;
+            }
+        }
+        return buffer.flip();
+    }
+    
+    /** 
+     * Creates a character grid for given UTF-8 code, same as {@link #parse(String)}.
+     * The lines are indexed by their offsets, each row is decoded from the bytes
+     * and its bubbles and lenses are removed, adding the definitions to given map.
+     */
+    private Grid parse(ByteBuffer bytes, Map<Character, Definition> definitions) throws CompileException {
+        var limit = bytes.limit();
+        var decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        var line = CharBuffer.allocate(64);
+        var offsets = new int[64];
+        var decoded = new BitSet();
+        var rows = 0;
+        var cols = 0;
+        var ascii = true;
+        for (var i = 0; i <= limit; i++) {
+            var b = i < limit ? bytes.get(i) : '\n';
+            if (b == '\n') {
+                var start = offsets[rows];
+                var length = i - start;
+                if (!ascii) {
+                    // counted by the decoder, including replaced malformed bytes
+                    line = decode(decoder, bytes, start, i, line);
+                    length = line.remaining();
+                    decoded.set(rows);
+                }
+                cols = Math.max(cols, length);
+                if (rows + 1 == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+                }
+                offsets[++rows] = i + 1;
+                ascii = true;
+            } else if (b < 0) {
+                ascii = false;
+            }
+        }
+        environment.print("%d rows%n", rows);
         environment.print("%d columns%n", cols);
         
-        var chars = new char[rows][cols];
+        var chars = Grid.chars(rows, cols);
         for (var y = 0; y < rows; y++) {
-            var line = lines[y];
-            var row = chars[y];
-            Arrays.fill(row, EMPTY);
-            for (var x = 0; x < line.length(); x++) {
-                row[x] = line.charAt(x);
+            var start = offsets[y];
+            var end = offsets[y+1] - 1;
+            if (decoded.get(y)) {
+                line = decode(decoder, bytes, start, end, line);
+                for (var x = 0; line.hasRemaining(); x++) {
+                    chars.set(x, y, line.get());
+                }
+            } else {
+                for (var i = start; i < end; i++) {
+                    chars.set(i-start, y, (char) bytes.get(i));
+                }
             }
+            bubblesLenses(chars, y, definitions);
         }
         return chars;
     }
     
+    /** Decodes the bytes of a line into given buffer, or a bigger one if needed; returns the flipped buffer. */
+    private static CharBuffer decode(CharsetDecoder decoder, ByteBuffer bytes, int start, int end, CharBuffer line) {
+        var in = bytes.duplicate().limit(end).position(start);
+        line.clear();
+        decoder.reset();
+        while (decoder.decode(in, line, true).isOverflow()) {
+            line = grow(line);
+        }
+        while (decoder.flush(line).isOverflow()) {
+            line = grow(line);
+        }
+        return line.flip();
+    }
+    
+    private static CharBuffer grow(CharBuffer buffer) {
+        return CharBuffer.allocate(2 * buffer.capacity()).put(buffer.flip());
+    }
+    
     /** Extract definitions from header file. */
     private Map<Character, Definition> parseHeaderFile(String header) throws CompileException {
         var definitions = new HashMap<Character, Definition>();
@@ -195,71 +353,75 @@ public class Compiler {
     }
     
     /** Removes bubles {@code (...)} and extract definitions from lenses {@code ((...))}. */
-    private Map<Character, Definition> bubblesLenses(char[][] chars) throws CompileException {
+    private Map<Character, Definition> bubblesLenses(Grid chars) throws CompileException {
         var definitions = new HashMap<Character, Definition>();
-        for (var y = 0; y < chars.length; y++) {
-            var row = chars[y];
-            for (var x = 0; x < row.length; x++) {
-                if (row[x] == '(') {
-                    row[x] = ' ';
+        for (var y = 0; y < chars.rows(); y++) {
+            bubblesLenses(chars, y, definitions);
+        }
+        return definitions;
+    }
+    
+    /** Removes bubles and lenses of a row, adding the definitions to given map. */
+    private void bubblesLenses(Grid chars, int y, Map<Character, Definition> definitions) throws CompileException {
+        var cols = chars.cols();
+        for (var x = chars.next(0, y); x < cols; x = chars.next(x+1, y)) {
+            if (chars.get(x, y) == '(') {
+                chars.set(x, y, ' ');
+                x += 1;
+                // lens
+                if (x < cols && chars.get(x, y) == '(') {
+                    chars.set(x, y, ' ');
                     x += 1;
-                    // lens
-                    if (x < row.length && row[x] == '(') {
-                        row[x] = ' ';
-                        x += 1;
-                        var  start = x;
-                        var expr = "";
-                        while (x < row.length) {
-                            if (row[x] == ')') {
-                                row[x] = ' ';
-                                break;
-                            }
-                            expr += row[x];
-                            row[x] = ' ';
-                            x += 1;
+                    var  start = x;
+                    var expr = new StringBuilder();
+                    while (x < cols) {
+                        var ch = chars.get(x, y);
+                        chars.set(x, y, ' ');
+                        if (ch == ')') {
+                            break;
                         }
+                        expr.append(ch);
                         x += 1;
-                        if (x >= row.length || row[x] != ')') {
-                            throw new CompileException(new Pos(x-1, y), "lens not correctly terminated");
-                        }
-                        row[x] = ' ';
-                        var pos = new Pos(start, y);
-                        if (!expr.isBlank()) {
-                            var def = Definition.parse(pos, expr);
-                            if (definitions.containsKey(def.symbol)) {
-                                throw new CompileException(pos, "duplicated definition");
-                            }
-                            definitions.put(def.symbol, def);
-                        }
-                    } else {
-                        while (x < row.length) {
-                            if (row[x] == ')') {
-                                row[x] = ' ';
-                                break;
-                            }
-                            row[x] = ' ';
-                            x += 1;
+                    }
+                    x += 1;
+                    if (x >= cols || chars.get(x, y) != ')') {
+                        throw new CompileException(new Pos(x-1, y), "lens not correctly terminated");
+                    }
+                    chars.set(x, y, ' ');
+                    var pos = new Pos(start, y);
+                    if (!expr.toString().isBlank()) {
+                        var def = Definition.parse(pos, expr.toString());
+                        if (definitions.containsKey(def.symbol)) {
+                            throw new CompileException(pos, "duplicated definition");
                         }
-                        if (x >= row.length) {
-                            throw new CompileException(new Pos(x, y), "bubble not correctly terminated");
+                        definitions.put(def.symbol, def);
+                    }
+                } else {
+                    while (x < cols) {
+                        if (chars.get(x, y) == ')') {
+                            chars.set(x, y, ' ');
+                            break;
                         }
+                        chars.set(x, y, ' ');
+                        x += 1;
+                    }
+                    if (x >= cols) {
+                        throw new CompileException(new Pos(x, y), "bubble not correctly terminated");
                     }
                 }
             }
         }
-        return definitions;
     }
     
-    /** Scans the character matrix for stations. */
-    private Map<Pos, Single> scanStations(char[][] chars, Zone[][] zones, Map<Character, Definition> definitions) throws CompileException {
+    /** Scans the character grid for stations, skipping blank chunks. */
+    private Map<Pos, Single> scanStations(Grid chars, Grid zones, Map<Character, Definition> definitions) throws CompileException {
         var map = new HashMap<Pos, Single>();
-        for (var y = 0; y < chars.length; y++) {
-            var row = chars[y];
-            for (var x = 0; x < row.length; x++) {
-                var ch = row[x];
+        for (var y = 0; y < chars.rows(); y++) {
+            for (var x = chars.next(0, y); x < chars.cols(); x = chars.next(x+1, y)) {
+                var ch = chars.get(x, y);
                 if (NOT_STATION.indexOf(ch) == -1) {
                     Single station;
-                    switch (zones[y][x]) {
+                    switch (zones.zone(x, y)) {
                         case NONE: {
                             station = pureStation(ch, x, y);
                             if (station == null) {
@@ -299,7 +461,7 @@ public class Compiler {
                             break;
                         }
                         default: 
-                            throw new CompileException(new Pos(x, y), "unhandled Zone: " + zones[y][x]);
+                            throw new CompileException(new Pos(x, y), "unhandled Zone: " + zones.zone(x, y));
                     }
                     map.put(station.pos(), station);
                 }
@@ -322,106 +484,162 @@ public class Compiler {
         };
     }
     
+    /** Neighbours of a station scanned before it, in row-major order. */
+    private static final Dir[] SCANNED = { Dir.W, Dir.NW, Dir.N, Dir.NE };
+    
     /**
      * Creates bound station from adjacent single stations.
      * Returns a list including all bound stations and all stations that are not bounded.
+     * The stations are joined by union-find, each station only checks the neighbours scanned before it
+     * (west, north-west, north, north-east), found by binary search of their row-major cell index.
      */
-    private List<Station> bound(char[][] chars, Map<Pos, Single> singles) throws CompileException {
-        var stations = new ArrayList<Station>();
-        var boundID = 0;
-        var count = 0;
-        for (var station : singles.values()) {
-            Bound bound = null;
-            for (var n : new ArrayList<>(stations)) {
-                if (n.isNeighbour(station)) {
-                    if (bound == null) {
-                        if (n instanceof Single s) {
-                            stations.remove(s);
-                            var id = "" + (char)('A' + boundID / 10) + (boundID % 10);
-                            boundID += 1;
-                            bound = new Bound(id, environment, s, station);
-                            stations.add(bound);
-                            count += 1;
-                        } else if (n instanceof Bound b) {
-                            bound = b;
-                            bound.addChild(station);
-                        } else {
-                            throw new CompileException(station.pos(), "unhandled neighbour " + n.getClass().getSimpleName());
-                        }
-                    } else {
-                        if (n instanceof Single s) {
-                            stations.remove(s);
-                            bound.addChild(s);
-                        } else if (n instanceof Bound b) {
-                            stations.remove(b);
-                            b.childs().forEach(bound::addChild);
-                            bound = b;
-                            count -= 1;
-                        } else {
-                            throw new CompileException(station.pos(), "unhandled neighbour " + n.getClass().getSimpleName());
-                        }
+    private List<Station> bound(Grid chars, Map<Pos, Single> singles) throws CompileException {
+        var cols = chars.cols();
+        var list = singles.values().stream().sorted(Comparator.comparing(Single::pos)).toArray(Single[]::new);
+        var cells = new long[list.length];
+        var parent = new int[list.length];
+        for (var i = 0; i < list.length; i++) {
+            var x = list[i].x();
+            var y = list[i].y();
+            cells[i] = (long) y * cols + x;
+            parent[i] = i;
+            for (var dir : SCANNED) {
+                var nx = x + dir.dx;
+                var ny = y + dir.dy;
+                if (chars.valid(nx, ny)) {
+                    var j = Arrays.binarySearch(cells, 0, i, (long) ny * cols + nx);
+                    if (j >= 0) {
+                        union(parent, i, j);
                     }
                 }
             }
-            if (bound == null) {
-                stations.add(station);
+        }
+        
+        var childs = new ArrayList<List<Single>>();
+        var group = new int[list.length];
+        for (var i = 0; i < list.length; i++) {
+            var root = root(parent, i);
+            if (root == i) {
+                group[i] = childs.size();
+                childs.add(new ArrayList<>());
+            } else {
+                group[i] = group[root];
+            }
+            childs.get(group[i]).add(list[i]);
+        }
+        
+        var stations = new ArrayList<Station>();
+        var count = 0;
+        for (var members : childs) {
+            if (members.size() == 1) {
+                stations.add(members.get(0));
+            } else {
+                stations.add(new Bound(boundID(count), environment, members.toArray(new Single[members.size()])));
+                count += 1;
             }
         }
         environment.print("%d bound stations%n", count);
         return stations;
     }
     
-    /** Links stations. */
-    private void link(char[][] chars, Map<Pos, Single> singles) throws CompileException {
+    /** Root of a union-find tree, the first station in row-major order. */
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+    
+    private static void union(int[] parent, int i, int j) {
+        var a = root(parent, i);
+        var b = root(parent, j);
+        if (a < b) {
+            parent[b] = a;
+        } else if (b < a) {
+            parent[a] = b;
+        }
+    }
+    
+    /** Name of a bound station: {@code A0..A9, B0..Z9, AA0..ZZ9, AAA0...} */
+    static String boundID(int number) {
+        var letters = new StringBuilder();
+        for (var n = number / 10; ; n = n / 26 - 1) {
+            letters.insert(0, (char) ('A' + n % 26));
+            if (n < 26) {
+                break;
+            }
+        }
+        return letters.append(number % 10).toString();
+    }
+    
+    /**
+     * Links stations, the stations are traced in parallel, each only changing its own links.
+     * Errors are reported for the first failing station in row-major order.
+     */
+    private void link(Grid chars, Map<Pos, Single> singles) throws CompileException {
+        var stations = singles.values().stream().sorted(Comparator.comparing(Single::pos)).toArray(Single[]::new);
+        var counts = new int[stations.length];
+        var failures = new CompileException[stations.length];
+        IntStream.range(0, stations.length).parallel().forEach(i -> {
+            try {
+                counts[i] = link(stations[i], chars, singles);
+            } catch (CompileException ex) {
+                failures[i] = ex;
+            }
+        });
+        for (var failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        environment.print("%d links created%n", Arrays.stream(counts).sum());
+    }
+    
+    /** Links a station in all directions, returns the number of links. */
+    private int link(Single station, Grid chars, Map<Pos, Single> singles) throws CompileException {
         var count = 0;
-        for (var station : singles.values()) {
-            for (var dir : Dir.values()) {
-                var x = station.x() + dir.dx;
-                var y = station.y() + dir.dy;
-                if (!valid(x, y, chars)) {
-                    continue;
-                }
-                var ch = chars[y][x];
-                if (dir.isTunnel(ch) || dir.isOut(ch) && !dir.isIn(ch)) {
-                    var direct = false;
-                    while (dir.isTunnel(ch)) {
-                        if (dir.isDirect(ch) ) {
-                            direct = true;
-                        }
-                        x += dir.dx;
-                        y += dir.dy;
-                        ch = valid(x, y, chars) ? chars[y][x] : EMPTY;
-                    }
-                    if (dir.isOut(ch)) {
+        for (var dir : Dir.values()) {
+            var x = station.x() + dir.dx;
+            var y = station.y() + dir.dy;
+            if (!chars.valid(x, y)) {
+                continue;
+            }
+            var ch = chars.get(x, y);
+            if (dir.isTunnel(ch) || dir.isOut(ch) && !dir.isIn(ch)) {
+                var direct = false;
+                while (dir.isTunnel(ch)) {
+                    if (dir.isDirect(ch) ) {
                         direct = true;
-                        x += dir.dx;
-                        y += dir.dy;
-                        if (valid(x, y, chars)) {
-                            ch = chars[y][x];
-                            if (BORDER.indexOf(ch) != -1) {
-                                x += dir.dx;
-                                y += dir.dy;
-                            }
-                        }
                     }
-                    var pos = new Pos(x, y);
-                    var dest = valid(x, y, chars) ? singles.get(pos) : null;
-                    if (dest != null) {
-                        station.linkTo(dest);
-                        count += 1;
-                    } else if (direct) {    // TODO need direct?
-                        throw new CompileException(pos, String.format(
-                            "tunnel not ending at a stationm %s of %s", dir, station));
+                    x += dir.dx;
+                    y += dir.dy;
+                    ch = chars.valid(x, y) ? chars.get(x, y) : EMPTY;
+                }
+                if (dir.isOut(ch)) {
+                    direct = true;
+                    x += dir.dx;
+                    y += dir.dy;
+                    if (chars.valid(x, y)) {
+                        ch = chars.get(x, y);
+                        if (BORDER.indexOf(ch) != -1) {
+                            x += dir.dx;
+                            y += dir.dy;
+                        }
                     }
                 }
+                var pos = new Pos(x, y);
+                var dest = chars.valid(x, y) ? singles.get(pos) : null;
+                if (dest != null) {
+                    station.linkTo(dest);
+                    count += 1;
+                } else if (direct) {    // TODO need direct?
+                    throw new CompileException(pos, String.format(
+                        "tunnel not ending at a stationm %s of %s", dir, station));
+                }
             }
         }
-        environment.print("%d links created%n", count);
-    }
-    
-    /** Return if given coordinates are valis. */
-    private boolean valid(int x, int y, char[][] chars) {
-        return 0 <= y && y < chars.length && 0 <= x && x < chars[y].length;
+        return count;
     }
     
     //==============================================================================================
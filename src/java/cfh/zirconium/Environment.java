@@ -2,6 +2,8 @@ package cfh.zirconium;
 
 import static java.util.Objects.*;
 
+import java.nio.charset.StandardCharsets;
+
 /** Environment for program execution. */
 public class Environment {
 
@@ -11,11 +13,13 @@ public class Environment {
     private final Output error;
     
     private boolean halted = false;
+    /** Number of bytes written to the output since reset. */
+    private long written = 0;
     
     public Environment(Printer printer, Input input, Output output, Output error) {
         this.printer = requireNonNull(printer);
         this.input = requireNonNull(input);
-        this.output = requireNonNull(output);
+        this.output = new Counting(requireNonNull(output));
         this.error = requireNonNull(error);
     }
     
@@ -24,9 +28,12 @@ public class Environment {
     public Output output() { return output; }
     public Output error() { return error; }
     public boolean halted() { return halted; }
+    /** Number of bytes written to the output since reset, text counted as UTF-8. */
+    public long written() { return written; }
     
     public void reset() {
         halted = false;
+        written = 0;
         input.reset();
         output.reset();
         error.reset();
@@ -80,4 +87,31 @@ public class Environment {
         /** Write text to output. */
         public void write(String text);
     }
+    
+    /** Output counting the written bytes. */
+    private class Counting implements Output {
+        
+        private final Output delegate;
+        
+        Counting(Output delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public void reset() {
+            delegate.reset();
+        }
+        
+        @Override
+        public void write(int b) {
+            written += 1;
+            delegate.write(b);
+        }
+        
+        @Override
+        public void write(String text) {
+            written += text.getBytes(StandardCharsets.UTF_8).length;
+            delegate.write(text);
+        }
+    }
 }
@@ -0,0 +1,164 @@
+package cfh.zirconium;
+
+import static cfh.zirconium.Compiler.EMPTY;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import cfh.zirconium.Compiler.Zone;
+
+/**
+ * Compact grid of a map, one byte per cell.
+ * Each row is stored in chunks of {@value #CHUNK} cells; a chunk is only allocated when a
+ * non-blank value is written to it, so a wide but mostly blank map only uses memory for its content.
+ * Characters are stored as ASCII, other characters (synthetic stations) are coded by a symbol table.
+ * Zones are stored by their ordinal, blank being {@link Zone#NONE}.
+ */
+public final class Grid {
+
+    /** Creates a grid of blank characters. */
+    public static Grid chars(int rows, int cols) {
+        return new Grid(rows, cols, (byte) EMPTY);
+    }
+
+    /** Creates a grid of zones, all {@link Zone#NONE}. */
+    static Grid zones(int rows, int cols) {
+        return new Grid(rows, cols, (byte) Zone.NONE.ordinal());
+    }
+
+    private static final int SHIFT = 6;
+    private static final int CHUNK = 1 << SHIFT;
+    /** First code of the symbol table, and code of characters not in it. */
+    private static final int SYMBOL = 0x80;
+    private static final int OTHER = 0xFF;
+    private static final Zone[] ZONES = Zone.values();
+
+    private final int rows;
+    private final int cols;
+    private final byte blank;
+    /** Chunks of each row, {@code null} if blank. */
+    private final byte[][][] chunks;
+
+    /** Characters coded from {@link #SYMBOL}, and characters of cells coded {@link #OTHER}. */
+    private char[] symbols = new char[0];
+    private Map<Long, Character> others = null;
+
+    private Grid(int rows, int cols, byte blank) {
+        this.rows = rows;
+        this.cols = cols;
+        this.blank = blank;
+        chunks = new byte[rows][(cols + CHUNK - 1) >> SHIFT][];
+    }
+
+    /** Number of rows. */
+    public int rows() {
+        return rows;
+    }
+
+    /** Number of columns, the length of the longest line. */
+    public int cols() {
+        return cols;
+    }
+
+    /** Are the coordinates inside the grid. */
+    public boolean valid(int x, int y) {
+        return 0 <= y && y < rows && 0 <= x && x < cols;
+    }
+
+    /** Character at given cell. */
+    public char get(int x, int y) {
+        var code = code(x, y) & 0xFF;
+        if (code < SYMBOL) {
+            return (char) code;
+        } else if (code < OTHER) {
+            return symbols[code - SYMBOL];
+        } else {
+            return others.get(key(x, y));
+        }
+    }
+
+    /** Sets the character at given cell. */
+    public void set(int x, int y, char ch) {
+        if (others != null) {
+            others.remove(key(x, y));
+        }
+        if (ch < SYMBOL) {
+            code(x, y, (byte) ch);
+            return;
+        }
+        var code = 0;
+        while (code < symbols.length && symbols[code] != ch) {
+            code += 1;
+        }
+        if (code == symbols.length && code < OTHER - SYMBOL) {
+            symbols = Arrays.copyOf(symbols, code + 1);
+            symbols[code] = ch;
+        }
+        if (code < symbols.length) {
+            code(x, y, (byte) (SYMBOL + code));
+        } else {
+            if (others == null) {
+                others = new HashMap<>();
+            }
+            others.put(key(x, y), ch);
+            code(x, y, (byte) OTHER);
+        }
+    }
+
+    /** Zone of given cell. */
+    Zone zone(int x, int y) {
+        return ZONES[code(x, y)];
+    }
+
+    /** Sets the zone of given cell. */
+    void zone(int x, int y, Zone zone) {
+        code(x, y, (byte) zone.ordinal());
+    }
+
+    /** Column of the first non-blank cell of a row, starting at given column; {@link #cols()} if none. */
+    public int next(int x, int y) {
+        var row = chunks[y];
+        while (x < cols) {
+            var chunk = row[x >> SHIFT];
+            var end = Math.min(((x >> SHIFT) + 1) << SHIFT, cols);
+            if (chunk != null) {
+                for ( ; x < end; x++) {
+                    if (chunk[x & (CHUNK-1)] != blank) {
+                        return x;
+                    }
+                }
+            }
+            x = end;
+        }
+        return cols;
+    }
+
+    /** Number of chunks allocated, not blank. */
+    int allocated() {
+        return (int) Arrays.stream(chunks).flatMap(Arrays::stream).filter(c -> c != null).count();
+    }
+
+    private byte code(int x, int y) {
+        var chunk = chunks[y][x >> SHIFT];
+        return chunk == null ? blank : chunk[x & (CHUNK-1)];
+    }
+
+    private void code(int x, int y, byte code) {
+        var row = chunks[y];
+        var chunk = row[x >> SHIFT];
+        if (chunk == null) {
+            if (code == blank) {
+                return;
+            }
+            chunk = new byte[CHUNK];
+            Arrays.fill(chunk, blank);
+            row[x >> SHIFT] = chunk;
+        }
+        chunk[x & (CHUNK-1)] = code;
+    }
+
+    private long key(int x, int y) {
+        return (long) y * cols + x;
+    }
+}
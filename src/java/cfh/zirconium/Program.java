@@ -4,11 +4,14 @@ import java.io.Writer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Formatter;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
-import java.util.Set;
+import java.util.function.Predicate;
 
+import cfh.zirconium.engine.Engine;
+import cfh.zirconium.engine.Network;
 import cfh.zirconium.net.Bound;
+import cfh.zirconium.net.Ordering;
 import cfh.zirconium.net.Single;
 import cfh.zirconium.net.Station;
 
@@ -21,16 +24,26 @@ public class Program {
     
     private final String name;
     // TODO sourece?
-    private final Set<Station> stations;
+    /** All stations in execution order, see {@link Ordering}. */
+    private final List<Station> stations;
+    /** Stations in execution order, for allocation-free ticking. */
+    private final Station[] order;
     private final Environment env;
     
+    /** Lowered stations, created with first engine. */
+    private Network network = null;
+    /** Engine executing this program, {@code null} to execute the station objects. */
+    private Engine engine = null;
+    
     private boolean started = false;
-    // TODO step counter
+    /** Number of ticks executed since start. */
+    private long ticks = 0;
     
     /** Creates a program with given stations. */
     public Program(String name, Collection<Station> stations, Environment env) {
         this.name = Objects.requireNonNull(name);
-        this.stations = Collections.unmodifiableSet(new HashSet<>(stations));
+        this.stations = Collections.unmodifiableList(Ordering.of(stations));
+        this.order = this.stations.toArray(new Station[this.stations.size()]);
         this.env = Objects.requireNonNull(env);
     }
     
@@ -38,11 +51,48 @@ public class Program {
         return name;
     }
     
-    /** All stations. */
+    /** Number of ticks executed, or skipped, since start. */
+    public long ticks() {
+        return ticks;
+    }
+    
+    /** All stations, in execution order. */
     public Collection<Station> stations() {
         return Collections.unmodifiableCollection(stations);
     }
 
+    /** 
+     * Selects the engine executing this program and resets it.
+     * @param factory engine factory, {@code null} to execute the station objects directly
+     */
+    public void engine(Engine.Factory factory) {
+        if (engine != null) {
+            engine.close();
+            engine = null;
+        }
+        if (factory != null) {
+            if (network == null) {
+                network = Network.of(stations);
+            }
+            engine = factory.create(network, env);
+        }
+        reset();
+    }
+    
+    /** Engine executing this program, {@code null} if executing the station objects. */
+    public Engine engine() {
+        return engine;
+    }
+    
+    /** Copies the state of the engine, if any, to the station objects. */
+    public void sync() {
+        if (engine != null) {
+            for (var i = 0; i < network.size(); i++) {
+                network.single(i).load(engine.drones(i), engine.previous(i));
+            }
+        }
+    }
+
     /** Creates DOT graph. */
     public void graph(Writer wr) {
         var out = new Formatter(wr);
@@ -80,8 +130,12 @@ public class Program {
     /** Reset. */
     public void reset() {
         stations.forEach(Station::reset);
+        if (engine != null) {
+            engine.reset();
+        }
         env.reset();
         started = false;
+        ticks = 0;
     }
     
     /** 
@@ -93,18 +147,142 @@ public class Program {
             start();
         }
         if (!env.halted()) {
-            stations.forEach(Station::preTick);
-            stations.forEach(Station::tick);
-            stations.forEach(Station::posTick);
-            return stations.stream().flatMap(Station::stations).mapToInt(Single::delta).allMatch(i -> i == 0);
+            ticks += 1;
+            if (engine != null) {
+                return engine.step();
+            }
+            for (var station : order) {
+                station.preTick();
+            }
+            for (var station : order) {
+                station.tick();
+            }
+            var changed = 0;
+            for (var station : order) {
+                changed += station.posTick();
+            }
+            return changed == 0;
         }
         return true;
     }
 
+    /**
+     * Executes given number of ticks, starting if not already done.
+     * Ticks that the engine can predict (e.g. repeating cycles) are skipped.
+     * @return number of ticks executed or skipped, less than requested if halted
+     */
+    public long advance(long count) {
+        if (!started) {
+            start();
+        }
+        var done = 0L;
+        while (done < count && !env.halted()) {
+            var skipped = engine == null ? 0 : engine.skip(count - done);
+            if (skipped > 0) {
+                ticks += skipped;
+                done += skipped;
+            } else {
+                step();
+                done += 1;
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Executes up to given number of ticks in one call, starting if not already done.
+     * Without other conditions than the number of ticks, ticks predictable by the engine are skipped.
+     * @param until additional conditions to stop, checked after each tick
+     * @return number of ticks executed (or skipped) and the reason for stopping
+     */
+    public Result run(long count, Until until) {
+        Objects.requireNonNull(until);
+        if (!started) {
+            start();
+        }
+        if (until.equals(Until.HALT)) {
+            var done = advance(count);
+            return new Result(done, env.halted() ? Stop.HALTED : Stop.TICKS);
+        }
+        var output = until.output() < 0 ? Long.MAX_VALUE : env.written() + until.output();
+        var predicate = until.predicate();
+        var done = 0L;
+        while (done < count) {
+            if (env.halted()) {
+                return new Result(done, Stop.HALTED);
+            }
+            var unchanged = step();
+            done += 1;
+            if (env.halted()) {
+                return new Result(done, Stop.HALTED);
+            }
+            if (unchanged && until.quiescence()) {
+                return new Result(done, Stop.QUIESCENT);
+            }
+            if (env.written() >= output) {
+                return new Result(done, Stop.OUTPUT);
+            }
+            if (predicate != null && predicate.test(this)) {
+                return new Result(done, Stop.CONDITION);
+            }
+        }
+        return new Result(done, env.halted() ? Stop.HALTED : Stop.TICKS);
+    }
+
     /** Starts the program, basically only resets all stations. */
     private void start() {
         env.start();
         stations.forEach(Station::reset);
+        if (engine != null) {
+            engine.reset();
+        }
         started = true;
     }
+
+    //==============================================================================================
+    
+    /** Reason for {@link Program#run} to stop. */
+    public enum Stop {
+        /** Given number of ticks executed. */
+        TICKS,
+        /** Program halted, also if already halted before. */
+        HALTED,
+        /** Last tick did not change any station. */
+        QUIESCENT,
+        /** Output limit reached. */
+        OUTPUT,
+        /** Caller's predicate matched. */
+        CONDITION
+    }
+    
+    /** Result of {@link Program#run}: number of ticks executed (or skipped) and the reason for stopping. */
+    public record Result(long ticks, Stop reason) {
+    }
+    
+    /**
+     * Conditions to stop {@link Program#run} besides the number of ticks; halting always stops.
+     * @param quiescence stop after a tick without changes
+     * @param output stop when at least this number of bytes was written to the output, negative for no limit
+     * @param predicate tested after each tick, stop if {@code true}; {@code null} for none
+     */
+    public record Until(boolean quiescence, long output, Predicate<Program> predicate) {
+        
+        /** Stop only on halt. */
+        public static final Until HALT = new Until(false, -1, null);
+        
+        /** Also stop after a tick without changes. */
+        public Until quiescent() {
+            return new Until(true, output, predicate);
+        }
+        
+        /** Also stop when at least given number of bytes was written. */
+        public Until output(long bytes) {
+            return new Until(quiescence, bytes, predicate);
+        }
+        
+        /** Also stop when given predicate is {@code true} after a tick, replaces the previous predicate. */
+        public Until when(Predicate<Program> condition) {
+            return new Until(quiescence, output, Objects.requireNonNull(condition));
+        }
+    }
 }
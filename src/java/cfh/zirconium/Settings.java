@@ -44,6 +44,10 @@ public class Settings {
     /** Separator printed after number output. */
     public String numberSeparator() { return " "; }
     
+    // execution
+    /** Maximal number of distinct expressions compiled to classes, others are executed as postfix programs. */
+    public int compiledExpressions() { return 1000; }
+    
     // help
     /** Font for help pane. */
     public Font helpFont() { return new Font(FONT_NAME, Font.PLAIN, FONT_SIZE); }
@@ -2,117 +2,208 @@ package cfh.zirconium;
 
 import static cfh.zirconium.Compiler.*;
 
-import java.util.LinkedList;
+import java.util.BitSet;
+import java.util.HashMap;
+
 import cfh.zirconium.Compiler.CompileException;
 import cfh.zirconium.Compiler.Zone;
 import cfh.zirconium.net.Pos;
 
-/** Zone Detector for Zirconium programs. */
+/**
+ * Zone Detector for Zirconium programs.
+ * Each region is flooded using a flat cell index ({@code y * width + x}) with a bitset of the cells
+ * already in a region, so detection is linear in the map size.
+ * Only the open cells are kept, in a ring buffer, and the zones are written to a compact {@link Grid}
+ * by a second flood, so blank regions need no memory besides the bitset.
+ * <p>
+ * The type of a region does not depend on the visiting order. An ambiguous region is flooded again
+ * in the original order, where a cell pushed again is moved to the end of the open queue,
+ * to report the same position.
+ */
 public class ZoneDetector {
-    
-    private final char[][] chars;
-    
-    ZoneDetector(char[][] chars) {
+
+    /** Horizontal and vertical neighbours, in visiting order. */
+    private static final int[] DX = { 0, -1, 0, +1 };
+    private static final int[] DY = { -1, 0, +1, 0 };
+
+    private final Grid chars;
+    private final int width;
+
+    /** Cells done, in a region or border. */
+    private BitSet done;
+    /** Open queue of cells, a ring buffer indexed by entry number ({@code queue[entry & (length-1)]}). */
+    private int[] queue = new int[64];
+    private int head;
+    private int tail;
+
+    ZoneDetector(Grid chars) {
         this.chars = chars;
+        width = chars.cols();
     }
 
-    public Zone[][] detect() throws CompileException {
-        var zones = new Zone[chars.length][];
-        for (var i = 0; i < zones.length; i++) {
-            zones[i] = new Zone[chars[i].length];
-        }
-        
-        for (var y = 0; y < zones.length; y++) {
-            for (var x = 0; x < zones[y].length; x++) {
-                if (zones[y][x] == null) {
-                    if (isBorder(x, y)) {
-                        zones[y][x] = Zone.NONE;
-                    } else {
-                        flood(x, y, zones);
+    public Grid detect() throws CompileException {
+        var zones = Grid.zones(chars.rows(), width);
+        done = new BitSet(chars.rows() * width);
+
+        for (var y = 0; y < chars.rows(); y++) {
+            for (var x = 0; x < width; x++) {
+                if (!done.get(y * width + x) && !isBorder(x, y)) {
+                    var type = flood(x, y);
+                    if (type != Zone.NONE) {
+                        paint(x, y, type, zones);
                     }
                 }
             }
         }
-        
+
+        done = null;
         return zones;
     }
-    
-    private void flood(int sx, int sy, Zone[][] zones) throws CompileException {
-        var type = Zone.NONE;
-        var region = new LinkedList<Pos>();
-        var open = new LinkedList<Pos>() {
-            void push(int x, int y) {
-                var p = new Pos(x, y);
-                if (!region.contains(p)) {
-                    remove(p);
-                    add(p);
+
+    /** Marks the cells of a region as done, returns its type. */
+    private Zone flood(int sx, int sy) throws CompileException {
+        var types = 0;
+        head = 0;
+        tail = 0;
+        done.set(sy * width + sx);
+        offer(sy * width + sx);
+        while (head < tail) {
+            var cell = queue[head++ & (queue.length-1)];
+            var x = cell % width;
+            var y = cell / width;
+            Zone type = null;
+            if (y > 0) {
+                visit(x, y-1);
+            }
+            if (x > 0 && !visit(x-1, y)) {
+                type = type(chars.get(x-1, y), MP_L, EZ_L);
+            }
+            if (y+1 < chars.rows()) {
+                visit(x, y+1);
+            }
+            if (x+1 < width && !visit(x+1, y)) {
+                // the right border decides if a cell is bordered on both sides
+                var right = type(chars.get(x+1, y), MP_R, EZ_R);
+                if (right != null) {
+                    type = right;
                 }
             }
+            if (type != null) {
+                types |= 1 << type.ordinal();
+            }
+        }
+        return switch (types) {
+            case 0 -> Zone.NONE;
+            case 1 << 1 -> Zone.EXCLUSION;
+            case 1 << 2 -> Zone.METROPOLIS;
+            default -> throw ambiguous(sx, sy);
         };
-        
-        Pos start = new Pos(sx, sy);
-        open.add(start);
-        while (!open.isEmpty()) {
-            var pos = open.remove();
-            region.add(pos);
-            var x = pos.x();
-            var y = pos.y();
-            assert zones[y][x] == null : pos + " " + zones[y][x];
-            Zone newType = null;
-            
-            if (y > 0) {
-                if (!isBorder(x, y-1) && zones[y-1][x] == null) {
-                    open.push(x, y-1);
-                } else {
-                    // TODO ?
+    }
+
+    /** Marks and opens a cell if not done, returns {@code false} if it is a border. */
+    private boolean visit(int x, int y) {
+        if (isBorder(x, y)) {
+            return false;
+        }
+        var cell = y * width + x;
+        if (!done.get(cell)) {
+            done.set(cell);
+            offer(cell);
+        }
+        return true;
+    }
+
+    /** Sets the zone of the region containing given cell, all its cells being still {@link Zone#NONE}. */
+    private void paint(int sx, int sy, Zone type, Grid zones) {
+        head = 0;
+        tail = 0;
+        zones.zone(sx, sy, type);
+        offer(sy * width + sx);
+        while (head < tail) {
+            var cell = queue[head++ & (queue.length-1)];
+            var x = cell % width;
+            var y = cell / width;
+            for (var i = 0; i < DX.length; i++) {
+                var nx = x + DX[i];
+                var ny = y + DY[i];
+                if (chars.valid(nx, ny) && !isBorder(nx, ny) && zones.zone(nx, ny) != type) {
+                    zones.zone(nx, ny, type);
+                    offer(ny * width + nx);
                 }
             }
-            if (x > 0) {
-                if (!isBorder(x-1, y) && zones[y][x-1] == null) {
-                    open.push(x-1, y);
-                } else {
-                    if (chars[y][x-1] == MP_L) {
-                        newType = Zone.METROPOLIS;
-                    } else if (chars[y][x-1] == EZ_L) {
-                        newType = Zone.EXCLUSION;
-                    }
-                }
+        }
+    }
+
+    /**
+     * Floods an ambiguous region in the original order, each cell pushed again
+     * moved to the end of the open queue (lazily: older entries are skipped).
+     * @return the exception for the cell where the second type was found
+     */
+    private CompileException ambiguous(int sx, int sy) {
+        var seen = new BitSet();
+        var latest = new HashMap<Integer, Integer>();
+        var type = Zone.NONE;
+        head = 0;
+        tail = 0;
+        latest.put(sy * width + sx, tail);
+        offer(sy * width + sx);
+        while (head < tail) {
+            var entry = head++;
+            var cell = queue[entry & (queue.length-1)];
+            if (latest.get(cell) != entry) {
+                continue;  // pushed again later
             }
-            if (y+1 < zones.length) {
-                if (!isBorder(x, y+1) && zones[y+1][x] == null) {
-                    open.push(x, y+1);
-                } else {
-                    // TODO ?
+            seen.set(cell);
+            var x = cell % width;
+            var y = cell / width;
+            Zone newType = null;
+            for (var i = 0; i < DX.length; i++) {
+                var nx = x + DX[i];
+                var ny = y + DY[i];
+                if (!chars.valid(nx, ny)) {
+                    continue;
                 }
-            }
-            if (x+1 < zones[y].length) {
-                if (!isBorder(x+1, y) && zones[y][x+1] == null) {
-                    open.push(x+1, y);
-                } else {
-                    if (chars[y][x+1] == MP_R) {
-                        newType = Zone.METROPOLIS;
-                    } else if (chars[y][x+1] == EZ_R) {
-                        newType = Zone.EXCLUSION;
+                if (!isBorder(nx, ny)) {
+                    if (!seen.get(ny * width + nx)) {
+                        latest.put(ny * width + nx, tail);
+                        offer(ny * width + nx);
+                    }
+                } else if (DX[i] != 0) {
+                    var found = DX[i] < 0 ? type(chars.get(nx, ny), MP_L, EZ_L) : type(chars.get(nx, ny), MP_R, EZ_R);
+                    if (found != null) {
+                        newType = found;
                     }
                 }
             }
-            
             if (newType != null && newType != type) {
                 if (type == Zone.NONE) {
                     type = newType;
                 } else {
-                    throw new CompileException(pos, "ambigous zone: " + type + ", " + newType);
+                    return new CompileException(new Pos(x, y), "ambigous zone: " + type + ", " + newType);
                 }
             }
         }
-        
-        for (var pos : region) {
-            assert zones[pos.y()][pos.x()] == null : pos + " " + zones[pos.y()][pos.x()];
-            zones[pos.y()][pos.x()] = type;
+        throw new AssertionError("region not ambigous at " + new Pos(sx, sy));
+    }
+
+    /** Appends a cell to the open queue, growing the ring buffer if full. */
+    private void offer(int cell) {
+        if (tail - head == queue.length) {
+            var bigger = new int[2*queue.length];
+            for (var e = head; e < tail; e++) {
+                bigger[e & (bigger.length-1)] = queue[e & (queue.length-1)];
+            }
+            queue = bigger;
         }
+        queue[tail++ & (queue.length-1)] = cell;
+    }
+
+    /** Zone bordered by given character, {@code null} if not a zone border. */
+    private static Zone type(char ch, char metropolis, char exclusion) {
+        return ch == metropolis ? Zone.METROPOLIS : ch == exclusion ? Zone.EXCLUSION : null;
     }
 
     private boolean isBorder(int x, int y) {
-        return BORDER.indexOf(chars[y][x]) != -1;
+        return BORDER.indexOf(chars.get(x, y)) != -1;
     }
 }
@@ -0,0 +1,157 @@
+package cfh.zirconium.engine;
+
+import java.util.Arrays;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Flat engine detecting repeating states to fast-forward periodic programs.
+ * <p>
+ * The state is hashed incrementally, only stations changed by a tick are rehashed.
+ * Cycles are detected using Brent's algorithm: the state is saved at power of two ticks and
+ * compared with the following states, first by hash, then by content.
+ * Ticks reading input or pausing restart the detection, since these can not be repeated.
+ * Once a cycle is found, whole periods starting at the saved state are {@link #skip skipped},
+ * just writing the output recorded during one period.
+ */
+public class CycleEngine extends FlatEngine {
+
+    /** Hash of the current state. */
+    private long hash = 0;
+
+    /** State saved for comparison. */
+    private final int[] saved;
+    private long savedHash = 0;
+    /** Ticks since saving the state, and number of ticks until saving again. */
+    private long length = 0;
+    private long power = 1;
+    /** Length of detected cycle, zero if none. */
+    private long period = 0;
+    /** Ticks since the state was equal to the saved one, modulo period. */
+    private long phase = 0;
+
+    /** Output since saving the state: station index and total of each output. */
+    private int[] events = new int[32];
+    private int eventCount = 0;
+
+    /** Creates an engine for given network. */
+    public CycleEngine(Network network, Environment env) {
+        super(network, env);
+        saved = new int[network.size()];
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        hash = 0;
+        restart();
+    }
+
+    @Override
+    public boolean step() {
+        tick();
+
+        var unchanged = true;
+        for (var i = 0; i < drones.length; i++) {
+            if (drones[i] != previous[i]) {
+                unchanged = false;
+                hash += mix(i, drones[i]) - mix(i, previous[i]);
+            }
+        }
+
+        if (!repeatable()) {
+            restart();
+        } else if (period != 0) {
+            phase = (phase + 1) % period;
+        } else {
+            length += 1;
+            record();
+            if (hash == savedHash && Arrays.equals(drones, saved)) {
+                period = length;
+                phase = 0;
+            } else if (length == power) {
+                save();
+                power *= 2;
+            }
+        }
+        return unchanged;
+    }
+
+    /** Length of the detected cycle, zero if not (yet) detected. */
+    public long period() {
+        return period;
+    }
+
+    @Override
+    public long skip(long ticks) {
+        if (period == 0 || phase != 0 || ticks < period) {
+            return 0;
+        }
+        var periods = ticks / period;
+        if (eventCount > 0) {
+            var op = net.op;
+            for (var p = 0L; p < periods; p++) {
+                for (var e = 0; e < eventCount; e += 2) {
+                    Kernel.tick(op[events[e]], events[e+1], 0, null, env);
+                }
+            }
+        }
+        return periods * period;
+    }
+
+    /** Does the last tick only depend on the state, no input read nor pause. */
+    private boolean repeatable() {
+        for (var i : net.effects) {
+            var op = net.op[i];
+            if ((op == Kernel.BYTE_IN || op == Kernel.NUM_IN) && totals[net.group[i]] > 0) {
+                return false;
+            }
+        }
+        for (var i : net.posTicks) {
+            if (net.op[i] == Kernel.PAUSE && totals[net.group[i]] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Records the output of the last tick. */
+    private void record() {
+        for (var i : net.effects) {
+            var total = totals[net.group[i]];
+            if (total > 0) {
+                if (eventCount == events.length) {
+                    events = Arrays.copyOf(events, 2*eventCount);
+                }
+                events[eventCount++] = i;
+                events[eventCount++] = total;
+            }
+        }
+    }
+
+    /** Restarts the detection with the current state. */
+    private void restart() {
+        period = 0;
+        power = 1;
+        save();
+    }
+
+    /** Saves the current state. */
+    private void save() {
+        System.arraycopy(drones, 0, saved, 0, drones.length);
+        savedHash = hash;
+        length = 0;
+        eventCount = 0;
+    }
+
+    /** Hash contribution of a station, zero if empty. */
+    private static long mix(int index, int value) {
+        if (value == 0) {
+            return 0;
+        }
+        var x = ((long) index << 32) ^ (value & 0xFFFFFFFFL);
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -0,0 +1,327 @@
+package cfh.zirconium.engine;
+
+import static cfh.zirconium.engine.Kernel.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import cfh.zirconium.Environment;
+import cfh.zirconium.expr.Definition;
+
+/**
+ * Flat engine executing chains of relays as delay lines.
+ * A relay is a single {@code o} (identity) or {@code .} (clamped to one) station, not bound,
+ * with exactly one linked station; following relays are linked only by their predecessor.
+ * The drones of a chain {@code r1 -> r2 -> ... -> rm} are a function of what {@code r1}
+ * received in the last {@code m} ticks: only {@code r1} is kept in the counters,
+ * its history is kept in a ring buffer, and the station linked by {@code rm}
+ * receives the value delayed by {@code m} ticks.
+ * <p>
+ * The tick works on a compacted copy of the network: the relays are left out of the
+ * executed stations and groups, and the relays after the first have no counters at all,
+ * and their changes are counted over a sliding window of the history, so a long wire
+ * costs a constant number of ring buffer accesses per tick.
+ */
+public class DelayEngine extends FlatEngine {
+
+    /** Chain of each station, {@code -1} if not in a chain. */
+    private final int[] chain;
+    /** Position of each station in its chain, {@code 0} for the first relay. */
+    private final int[] hop;
+    /** Is the number of drones of each relay clamped to one by a preceding {@code .}. */
+    private final boolean[] clamped;
+
+    /** Number of executed stations (not relays), first in the compact counters. */
+    private final int executed;
+    /** Index in the compact counters of each station, {@code -1} for relays after the first. */
+    private final int[] index;
+    /** Station of each executed station. */
+    private final int[] original;
+    /** Compacted network of the executed stations, as in {@link Network}, targets indexed in the compact counters. */
+    private final int[] op;
+    private final int[] group;
+    private final Definition[] definitions;
+    private final int[] members;
+    private final int[] counts;
+    private final int[] links;
+    private final int[] targets;
+    private final int[] weights;
+    private final int[] posTicks;
+
+    /** First relay and linked station (in the compact counters), number of relays and clamping of each chain. */
+    private final int[] heads;
+    private final int[] lengths;
+    private final boolean[] clamping;
+    private final int[] outs;
+    /** First clamped relay (hop) of each chain, its length if none. */
+    private final int[] splits;
+    /** History of each chain in {@link #ring}, starting at {@code offsets[c]}. */
+    private final int[] offsets;
+    private final int[] ring;
+    /** Number of ticks since reset, selects the position in the ring buffers. */
+    private long ticks = 0;
+    /** Number of relays after the first changed by last tick, over all chains. */
+    private int changes = 0;
+
+    /** Creates an engine for given network. */
+    public DelayEngine(Network network, Environment env) {
+        super(network, env);
+        var size = net.size();
+        var relay = new boolean[size];
+        var incoming = new int[size];
+        var source = new int[size];
+        for (var g = 0; g < net.groups(); g++) {
+            for (var l = net.links[g]; l < net.links[g+1]; l++) {
+                var t = net.targets[l];
+                incoming[t] += net.weights[l];
+                source[t] = net.members[g];
+            }
+        }
+        for (var i = 0; i < size; i++) {
+            var g = net.group[i];
+            relay[i] = (net.op[i] == DUP || net.op[i] == DOT)
+                && net.members[g+1] - net.members[g] == 1
+                && net.countLinked(g) == 1
+                && net.targets[net.links[g]] != i;
+        }
+
+        chain = new int[size];
+        Arrays.fill(chain, -1);
+        hop = new int[size];
+        clamped = new boolean[size];
+        var splitList = new ArrayList<Integer>();
+        var headList = new ArrayList<Integer>();
+        var lengthList = new ArrayList<Integer>();
+        var clampingList = new ArrayList<Boolean>();
+        var outList = new ArrayList<Integer>();
+        for (var i = 0; i < size; i++) {
+            if (!relay[i] || isFollower(i, relay, incoming, source)) {
+                continue;
+            }
+            var members = new ArrayList<Integer>();
+            var clamp = false;
+            var r = i;
+            while (true) {
+                members.add(r);
+                clamp |= net.op[r] == DOT;
+                var next = next(r);
+                if (!isFollower(next, relay, incoming, source)) {
+                    break;
+                }
+                clamped[next] = clamp;
+                r = next;
+            }
+            if (members.size() < 2) {
+                continue;
+            }
+            for (var j = 0; j < members.size(); j++) {
+                chain[members.get(j)] = headList.size();
+                hop[members.get(j)] = j;
+            }
+            var split = 1;
+            while (split < members.size() && !clamped[members.get(split)]) {
+                split += 1;
+            }
+            splitList.add(split);
+            headList.add(i);
+            lengthList.add(members.size());
+            clampingList.add(clamp);
+            outList.add(next(r));
+        }
+        heads = headList.stream().mapToInt(Integer::intValue).toArray();
+        lengths = lengthList.stream().mapToInt(Integer::intValue).toArray();
+        clamping = new boolean[heads.length];
+        for (var c = 0; c < heads.length; c++) {
+            clamping[c] = clampingList.get(c);
+        }
+        outs = outList.stream().mapToInt(Integer::intValue).toArray();
+        splits = splitList.stream().mapToInt(Integer::intValue).toArray();
+        offsets = new int[heads.length];
+        for (var c = 1; c < heads.length; c++) {
+            offsets[c] = offsets[c-1] + lengths[c-1];
+        }
+        ring = new int[heads.length == 0 ? 0 : offsets[heads.length-1] + lengths[heads.length-1]];
+
+        // compact counters: executed stations in order, followed by the first relay of each chain
+        index = new int[size];
+        Arrays.fill(index, -1);
+        var count = 0;
+        for (var i = 0; i < size; i++) {
+            if (chain[i] == -1) {
+                index[i] = count++;
+            }
+        }
+        executed = count;
+        for (var head : heads) {
+            index[head] = count++;
+        }
+        original = new int[executed];
+        op = new int[executed];
+        group = new int[executed];
+        definitions = new Definition[executed];
+        var memberList = new ArrayList<Integer>();
+        var countList = new ArrayList<Integer>();
+        var linkList = new ArrayList<Integer>();
+        var targetList = new ArrayList<Integer>();
+        var weightList = new ArrayList<Integer>();
+        for (var g = 0; g < net.groups(); g++) {
+            if (chain[net.members[g]] != -1) {
+                continue;  // relays are single stations
+            }
+            var h = memberList.size();
+            memberList.add(index[net.members[g]]);
+            countList.add(net.countLinked(g));
+            linkList.add(targetList.size());
+            for (var i = net.members[g]; i < net.members[g+1]; i++) {
+                var j = index[i];
+                original[j] = i;
+                op[j] = net.op[i];
+                group[j] = h;
+                definitions[j] = net.definitions[i];
+            }
+            for (var l = net.links[g]; l < net.links[g+1]; l++) {
+                targetList.add(index[net.targets[l]]);
+                weightList.add(net.weights[l]);
+            }
+        }
+        memberList.add(executed);
+        linkList.add(targetList.size());
+        members = memberList.stream().mapToInt(Integer::intValue).toArray();
+        counts = countList.stream().mapToInt(Integer::intValue).toArray();
+        links = linkList.stream().mapToInt(Integer::intValue).toArray();
+        targets = targetList.stream().mapToInt(Integer::intValue).toArray();
+        weights = weightList.stream().mapToInt(Integer::intValue).toArray();
+        posTicks = Arrays.stream(net.posTicks).map(i -> index[i]).toArray();
+        for (var c = 0; c < heads.length; c++) {
+            heads[c] = index[heads[c]];
+            outs[c] = index[outs[c]];
+        }
+        drones = new int[count];
+        previous = new int[count];
+    }
+
+    /** Station linked by a relay. */
+    private int next(int relay) {
+        return net.targets[net.links[net.group[relay]]];
+    }
+
+    /** Is the station a relay only linked by a preceding relay. */
+    private boolean isFollower(int i, boolean[] relay, int[] incoming, int[] source) {
+        return relay[i] && incoming[i] == 1 && relay[source[i]];
+    }
+
+    /** Number of chains executed as delay lines. */
+    public int chains() {
+        return heads.length;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        Arrays.fill(ring, 0);
+        ticks = 0;
+        changes = 0;
+    }
+
+    @Override
+    public boolean step() {
+        tick();
+        return Arrays.equals(drones, previous) && changes == 0;
+    }
+
+    @Override
+    protected void tick() {
+        var tmp = previous;
+        previous = drones;
+        drones = tmp;
+        Arrays.fill(drones, 0);
+        ticks += 1;
+
+        var groups = counts.length;
+        for (var g = 0; g < groups; g++) {
+            var total = 0;
+            for (var i = members[g]; i < members[g+1]; i++) {
+                total += previous[i];
+            }
+            totals[g] = total;
+        }
+
+        for (var i = 0; i < executed; i++) {
+            var g = group[i];
+            var number = Kernel.tick(op[i], totals[g], counts[g], definitions[i], env);
+            if (number > 0) {
+                for (var l = links[g]; l < links[g+1]; l++) {
+                    drones[targets[l]] += number * weights[l];
+                }
+            }
+        }
+
+        // the last relay dispatches what the first received m ticks ago
+        for (var c = 0; c < heads.length; c++) {
+            var length = lengths[c];
+            var offset = offsets[c];
+            // relay h changed if the history differs at ticks-h-1 and ticks-h:
+            // a window of these pairs for the unclamped and for the clamped relays
+            var split = splits[c];
+            if (split < length) {
+                changes -= changed(c, ticks-length-1, true);
+            }
+            if (split > 1) {
+                changes -= changed(c, ticks-split-1, false);
+            }
+            ring[offset + slot(ticks-1, length)] = previous[heads[c]];
+            if (split < length) {
+                changes += changed(c, ticks-split-1, true);
+            }
+            if (split > 1) {
+                changes += changed(c, ticks-2, false);
+            }
+            var delayed = ring[offset + slot(ticks, length)];
+            drones[outs[c]] += clamping[c] ? (delayed > 0 ? 1 : 0) : Math.max(0, delayed);
+        }
+
+        for (var i : posTicks) {
+            Kernel.posTick(op[i], totals[group[i]], env, net.single(original[i]));
+        }
+    }
+
+    /** One if the history of a chain, as relayed (clamped or not), differs from given tick to the next. */
+    private int changed(int c, long tick, boolean clamp) {
+        var before = ring[offsets[c] + slot(tick, lengths[c])];
+        var now = ring[offsets[c] + slot(tick+1, lengths[c])];
+        return (clamp ? (before > 0) != (now > 0) : Math.max(0, before) != Math.max(0, now)) ? 1 : 0;
+    }
+
+    /** Position in a ring buffer of given length of the value received by the first relay in given tick. */
+    private static int slot(long tick, int length) {
+        return (int) Math.floorMod(tick, (long) length);
+    }
+
+    /** Value received by the first relay of a chain given number of ticks ago, at most its length. */
+    private int history(int c, int lag) {
+        return lag == 0 ? drones[heads[c]] : ring[offsets[c] + slot(ticks-lag, lengths[c])];
+    }
+
+    @Override
+    public int drones(int station) {
+        var c = chain[station];
+        if (c == -1 || hop[station] == 0) {
+            return drones[index[station]];
+        }
+        return relayed(station, history(c, hop[station]));
+    }
+
+    @Override
+    public int previous(int station) {
+        var c = chain[station];
+        if (c == -1 || hop[station] == 0) {
+            return previous[index[station]];
+        }
+        return relayed(station, history(c, hop[station] + 1));
+    }
+
+    /** Number of drones a relay received from a value of the first relay. */
+    private int relayed(int index, int value) {
+        return clamped[index] ? (value > 0 ? 1 : 0) : Math.max(0, value);
+    }
+}
@@ -0,0 +1,181 @@
+package cfh.zirconium.engine;
+
+import static java.util.Objects.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Engine propagating only the changes: the drones a group dispatches only depend on its total
+ * and its fixed number of links, so it is only recomputed if the total may have changed,
+ * and only the difference to the last dispatched number is sent to the linked stations.
+ * The cost of a tick is proportional to the changing part of the network.
+ * <p>
+ * Groups with I/O stations are executed every tick, in index order.
+ */
+public class DeltaEngine implements Engine {
+
+    private final Network net;
+    private final Environment env;
+
+    private final int[] drones;
+    private final int[] previous;
+    /** Total drones of each group, before the next tick. */
+    private final int[] totals;
+    /** Drones dispatched by each group in last tick. */
+    private final int[] dispatched;
+    /** Number of linked stations of each group. */
+    private final int[] counts;
+    /** Groups with I/O stations, in index order. */
+    private final int[] effects;
+    /** Is the group executed every tick. */
+    private final boolean[] volatiles;
+
+    /** Stations changed in last tick. */
+    private final int[] changed;
+    private int changedCount = 0;
+    /** Groups to recompute in next tick. */
+    private final int[] dirty;
+    private int dirtyCount = 0;
+    /** Stations receiving a difference in current tick, and the differences. */
+    private final int[] touched;
+    private int touchedCount = 0;
+    private final int[] delta;
+
+    /** Tick of the last mark of each station and group, to avoid duplicates in the lists. */
+    private final int[] stationMark;
+    private final int[] groupMark;
+    private int mark = 0;
+
+    /** Creates an engine for given network. */
+    public DeltaEngine(Network network, Environment env) {
+        this.net = requireNonNull(network);
+        this.env = requireNonNull(env);
+        var size = net.size();
+        var groups = net.groups();
+        drones = new int[size];
+        previous = new int[size];
+        totals = new int[groups];
+        dispatched = new int[groups];
+        counts = new int[groups];
+        for (var g = 0; g < groups; g++) {
+            counts[g] = net.countLinked(g);
+        }
+        volatiles = new boolean[groups];
+        var list = new ArrayList<Integer>();
+        for (var i : net.effects) {
+            var g = net.group[i];
+            if (!volatiles[g]) {
+                volatiles[g] = true;
+                list.add(g);
+            }
+        }
+        effects = list.stream().mapToInt(Integer::intValue).toArray();
+
+        changed = new int[size];
+        dirty = new int[groups];
+        touched = new int[size];
+        delta = new int[size];
+        stationMark = new int[size];
+        groupMark = new int[groups];
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(drones, 0);
+        Arrays.fill(previous, 0);
+        Arrays.fill(totals, 0);
+        Arrays.fill(dispatched, 0);
+        Arrays.fill(stationMark, 0);
+        Arrays.fill(groupMark, 0);
+        mark = 0;
+        changedCount = 0;
+        touchedCount = 0;
+        dirtyCount = 0;
+        for (var g = 0; g < dirty.length; g++) {
+            if (!volatiles[g]) {
+                dirty[dirtyCount++] = g;
+            }
+        }
+    }
+
+    @Override
+    public boolean step() {
+        mark += 1;
+        for (var c = 0; c < changedCount; c++) {
+            var i = changed[c];
+            previous[i] = drones[i];
+        }
+        changedCount = 0;
+
+        for (var g : effects) {
+            dispatch(g);
+        }
+        for (var d = 0; d < dirtyCount; d++) {
+            dispatch(dirty[d]);
+        }
+        dirtyCount = 0;
+
+        for (var i : net.posTicks) {
+            Kernel.posTick(net.op[i], totals[net.group[i]], env, net.single(i));
+        }
+
+        var group = net.group;
+        for (var t = 0; t < touchedCount; t++) {
+            var i = touched[t];
+            var diff = delta[i];
+            if (diff != 0) {
+                delta[i] = 0;
+                drones[i] += diff;
+                changed[changedCount++] = i;
+                var g = group[i];
+                totals[g] += diff;
+                if (groupMark[g] != mark && !volatiles[g]) {
+                    groupMark[g] = mark;
+                    dirty[dirtyCount++] = g;
+                }
+            }
+        }
+        touchedCount = 0;
+        return changedCount == 0;
+    }
+
+    /** Recomputes the drones dispatched by a group and sends the difference. */
+    private void dispatch(int g) {
+        var op = net.op;
+        var definitions = net.definitions;
+        var total = totals[g];
+        var k = counts[g];
+        var number = 0;
+        for (var i = net.members[g]; i < net.members[g+1]; i++) {
+            number += Math.max(0, Kernel.tick(op[i], total, k, definitions[i], env));
+        }
+        var diff = number - dispatched[g];
+        if (diff != 0) {
+            dispatched[g] = number;
+            var targets = net.targets;
+            var weights = net.weights;
+            for (var l = net.links[g]; l < net.links[g+1]; l++) {
+                var t = targets[l];
+                if (stationMark[t] != mark) {
+                    stationMark[t] = mark;
+                    touched[touchedCount++] = t;
+                }
+                delta[t] += diff * weights[l];
+            }
+        }
+    }
+
+    @Override
+    public int drones(int index) {
+        return drones[index];
+    }
+
+    @Override
+    public int previous(int index) {
+        return previous[index];
+    }
+}
@@ -0,0 +1,55 @@
+package cfh.zirconium.engine;
+
+import java.math.BigInteger;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Execution engine working on the lowered form ({@link Network}) of a program.
+ * The station objects are the reference semantics; an engine keeps its own state
+ * that must be copied back to the stations to be seen by them.
+ */
+public interface Engine {
+
+    /** Resets the state, all stations empty. */
+    public void reset();
+
+    /**
+     * Executes a single tick.
+     * @return {@code true} if the number of drones of no station was changed
+     */
+    public boolean step();
+
+    /**
+     * Skips ticks without executing them, if the engine can predict their effect.
+     * Any output of the skipped ticks is written.
+     * @param ticks maximal number of ticks to skip
+     * @return number of ticks skipped, zero if the next tick must be executed
+     */
+    public default long skip(long ticks) {
+        return 0;
+    }
+
+    /** Number of drones on the station with given index. */
+    public int drones(int index);
+
+    /** Number of drones of the station with given index before last tick. */
+    public int previous(int index);
+
+    /** Exact number of drones on the station with given index, for engines not limited to {@code int}. */
+    public default BigInteger value(int index) {
+        return BigInteger.valueOf(drones(index));
+    }
+
+    /** Releases resources (threads, memory) used by this engine. */
+    public default void close() { /**/ }
+
+    //==============================================================================================
+
+    /** Creates an engine for a network. */
+    @FunctionalInterface
+    public interface Factory {
+        /** Creates an engine for given network and environment. */
+        public Engine create(Network network, Environment env);
+    }
+}
@@ -0,0 +1,91 @@
+package cfh.zirconium.engine;
+
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Engine executing the network as tight loops over primitive arrays,
+ * no objects are accessed or created per tick.
+ */
+public class FlatEngine implements Engine {
+
+    protected final Network net;
+    protected final Environment env;
+
+    protected int[] drones;
+    protected int[] previous;
+    /** Total drones of each group before last tick. */
+    protected final int[] totals;
+
+    /** Creates an engine for given network. */
+    public FlatEngine(Network network, Environment env) {
+        this.net = requireNonNull(network);
+        this.env = requireNonNull(env);
+        drones = new int[net.size()];
+        previous = new int[net.size()];
+        totals = new int[net.groups()];
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(drones, 0);
+        Arrays.fill(previous, 0);
+    }
+
+    @Override
+    public boolean step() {
+        tick();
+        return Arrays.equals(drones, previous);
+    }
+
+    /** Executes a single tick without checking for changes. */
+    protected void tick() {
+        var tmp = previous;
+        previous = drones;
+        drones = tmp;
+        Arrays.fill(drones, 0);
+
+        var members = net.members;
+        var groups = net.groups();
+        for (var g = 0; g < groups; g++) {
+            var total = 0;
+            for (var i = members[g]; i < members[g+1]; i++) {
+                total += previous[i];
+            }
+            totals[g] = total;
+        }
+
+        var op = net.op;
+        var group = net.group;
+        var definitions = net.definitions;
+        var links = net.links;
+        var targets = net.targets;
+        var weights = net.weights;
+        for (var i = 0; i < op.length; i++) {
+            var g = group[i];
+            var number = Kernel.tick(op[i], totals[g], net.countLinked(g), definitions[i], env);
+            if (number > 0) {
+                for (var l = links[g]; l < links[g+1]; l++) {
+                    drones[targets[l]] += number * weights[l];
+                }
+            }
+        }
+
+        for (var i : net.posTicks) {
+            Kernel.posTick(op[i], totals[group[i]], env, net.single(i));
+        }
+    }
+
+    @Override
+    public int drones(int index) {
+        return drones[index];
+    }
+
+    @Override
+    public int previous(int index) {
+        return previous[index];
+    }
+}
@@ -0,0 +1,116 @@
+package cfh.zirconium.engine;
+
+import static cfh.zirconium.engine.Kernel.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Flat engine with the stations grouped by kind, each kind is executed by its own loop
+ * without dispatching on the opcode. The number of drones dispatched is first summed per
+ * (bound) group, then sent once per group.
+ * Stations doing I/O are still executed by the {@link Kernel}, in index order.
+ */
+public class GroupedEngine extends FlatEngine {
+
+    /** Stations of each kind, indexed by opcode; empty for the I/O stations and {@code 0}. */
+    private final int[][] kinds;
+    /** Number of linked stations of each group. */
+    private final int[] counts;
+    /** Drones to send by each group in current tick. */
+    private final int[] sending;
+
+    /** Creates an engine for given network. */
+    public GroupedEngine(Network network, Environment env) {
+        super(network, env);
+        var lists = new ArrayList<List<Integer>>();
+        for (var op = 0; op <= HALT; op++) {
+            lists.add(new ArrayList<>());
+        }
+        for (var i = 0; i < net.size(); i++) {
+            var op = net.op[i];
+            if (op != NOP && op != PAUSE && op != HALT && !isEffect(op)) {
+                lists.get(op).add(i);
+            }
+        }
+        kinds = lists.stream()
+            .map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+            .toArray(int[][]::new);
+        counts = new int[net.groups()];
+        for (var g = 0; g < counts.length; g++) {
+            counts[g] = net.countLinked(g);
+        }
+        sending = new int[net.groups()];
+    }
+
+    @Override
+    protected void tick() {
+        var tmp = previous;
+        previous = drones;
+        drones = tmp;
+        Arrays.fill(drones, 0);
+
+        var members = net.members;
+        var groups = net.groups();
+        for (var g = 0; g < groups; g++) {
+            var total = 0;
+            for (var i = members[g]; i < members[g+1]; i++) {
+                total += previous[i];
+            }
+            totals[g] = total;
+        }
+
+        var group = net.group;
+        var op = net.op;
+        Arrays.fill(sending, 0);
+        for (var i : net.effects) {
+            var g = group[i];
+            sending[g] += Math.max(0, Kernel.tick(op[i], totals[g], counts[g], null, env));
+        }
+        for (var i : kinds[CREATE]) {
+            var g = group[i];
+            sending[g] += totals[g] == 0 ? 1 : 0;
+        }
+        for (var i : kinds[DOT]) {
+            var g = group[i];
+            sending[g] += totals[g] > 0 ? 1 : 0;
+        }
+        for (var i : kinds[DUP]) {
+            var g = group[i];
+            sending[g] += Math.max(0, totals[g]);
+        }
+        for (var i : kinds[DEC]) {
+            var g = group[i];
+            sending[g] += Math.max(0, totals[g] - 1);
+        }
+        for (var i : kinds[SPLIT]) {
+            var g = group[i];
+            var k = counts[g];
+            sending[g] += k > 0 ? Math.max(0, totals[g] / k) : 0;
+        }
+        var definitions = net.definitions;
+        for (var i : kinds[SYNTHETIC]) {
+            var g = group[i];
+            sending[g] += Math.max(0, definitions[i].calculate(totals[g], counts[g]));
+        }
+
+        var links = net.links;
+        var targets = net.targets;
+        var weights = net.weights;
+        for (var g = 0; g < groups; g++) {
+            var number = sending[g];
+            if (number != 0) {
+                for (var l = links[g]; l < links[g+1]; l++) {
+                    drones[targets[l]] += number * weights[l];
+                }
+            }
+        }
+
+        for (var i : net.posTicks) {
+            Kernel.posTick(op[i], totals[group[i]], env, net.single(i));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package cfh.zirconium.engine;
+
+import java.math.BigInteger;
+
+import cfh.zirconium.Environment;
+import cfh.zirconium.Settings;
+import cfh.zirconium.expr.Definition;
+import cfh.zirconium.net.*;
+
+/**
+ * Opcodes of the station types and the switch-based kernel executing them.
+ * Same behavior as the {@code tick0}/{@code posTick0} methods of the {@link Single} subclasses.
+ */
+final class Kernel {
+
+    static final int NOP = 0;
+    static final int CREATE = 1;
+    static final int DOT = 2;
+    static final int DUP = 3;
+    static final int DEC = 4;
+    static final int SPLIT = 5;
+    static final int SYNTHETIC = 6;
+    static final int BYTE_IN = 7;
+    static final int BYTE_OUT = 8;
+    static final int BYTE_ERR = 9;
+    static final int NUM_IN = 10;
+    static final int NUM_OUT = 11;
+    static final int PAUSE = 12;
+    static final int HALT = 13;
+
+    private static final Settings settings = Settings.instance();
+    private static final BigInteger BYTE = BigInteger.valueOf(256);
+
+    /** Opcode for given station. */
+    static int opcode(Single station) {
+        if (station instanceof NopStation) return NOP;
+        if (station instanceof CreateStation) return CREATE;
+        if (station instanceof DotStation) return DOT;
+        if (station instanceof DupStation) return DUP;
+        if (station instanceof DecStation) return DEC;
+        if (station instanceof SplitStation) return SPLIT;
+        if (station instanceof SyntheticStation) return SYNTHETIC;
+        if (station instanceof ByteInStation) return BYTE_IN;
+        if (station instanceof ByteOutStation) return BYTE_OUT;
+        if (station instanceof ByteErrStation) return BYTE_ERR;
+        if (station instanceof NumInStation) return NUM_IN;
+        if (station instanceof NumOutStation) return NUM_OUT;
+        if (station instanceof PauseStation) return PAUSE;
+        if (station instanceof HaltStation) return HALT;
+        throw new IllegalArgumentException("unhandled station " + station.getClass().getSimpleName());
+    }
+
+    /** Does the station with given opcode any I/O during the tick. */
+    static boolean isEffect(int op) {
+        return op == BYTE_IN || op == BYTE_OUT || op == BYTE_ERR || op == NUM_IN || op == NUM_OUT;
+    }
+
+    /**
+     * Tick process of a station.
+     * @param n total number of drones of the station (bound stations: all childs)
+     * @param k number of linked stations
+     * @return number of drones to dispatch to each linked station, not positive for none
+     */
+    static int tick(int op, int n, int k, Definition definition, Environment env) {
+        return switch (op) {
+            case NOP -> 0;
+            case CREATE -> n == 0 ? 1 : 0;
+            case DOT -> n > 0 ? 1 : 0;
+            case DUP -> n;
+            case DEC -> n - 1;
+            case SPLIT -> k > 0 ? n / k : 0;
+            case SYNTHETIC -> definition.calculate(n, k);
+            case BYTE_IN -> n > 0 ? env.input().readByte() : 0;
+            case NUM_IN -> n > 0 ? env.input().readInteger() : 0;
+            case BYTE_OUT -> {
+                if (n > 0) {
+                    int value = n % 256;
+                    env.output().write(value);
+                    env.print("%c", (char)value);
+                }
+                yield 0;
+            }
+            case BYTE_ERR -> {
+                if (n > 0) {
+                    int value = n % 256;
+                    env.error().write(value);
+                    env.print("%c", (char)value);
+                }
+                yield 0;
+            }
+            case NUM_OUT -> {
+                if (n > 0) {
+                    env.output(Integer.toString(n) + settings.numberSeparator());
+                    env.print("%d", n);
+                }
+                yield 0;
+            }
+            case PAUSE, HALT -> 0;  // done after tick
+            default -> throw new IllegalArgumentException("invalid opcode " + op);
+        };
+    }
+
+    /**
+     * Tick process of a station without overflow, see {@link #tick(int, int, int, Definition, Environment)}.
+     * @throws ArithmeticException if the result of a synthetic station does not fit in a {@code long}
+     */
+    static long tick(int op, long n, int k, Definition definition, Environment env) {
+        return switch (op) {
+            case NOP -> 0;
+            case CREATE -> n == 0 ? 1 : 0;
+            case DOT -> n > 0 ? 1 : 0;
+            case DUP -> n;
+            case DEC -> n - 1;
+            case SPLIT -> k > 0 ? n / k : 0;
+            case SYNTHETIC -> definition.calculate(n, k);
+            case BYTE_IN -> n > 0 ? env.input().readByte() : 0;
+            case NUM_IN -> n > 0 ? env.input().readInteger() : 0;
+            case BYTE_OUT -> {
+                if (n > 0) {
+                    int value = (int) (n % 256);
+                    env.output().write(value);
+                    env.print("%c", (char)value);
+                }
+                yield 0;
+            }
+            case BYTE_ERR -> {
+                if (n > 0) {
+                    int value = (int) (n % 256);
+                    env.error().write(value);
+                    env.print("%c", (char)value);
+                }
+                yield 0;
+            }
+            case NUM_OUT -> {
+                if (n > 0) {
+                    env.output(Long.toString(n) + settings.numberSeparator());
+                    env.print("%d", n);
+                }
+                yield 0;
+            }
+            case PAUSE, HALT -> 0;  // done after tick
+            default -> throw new IllegalArgumentException("invalid opcode " + op);
+        };
+    }
+
+    /** Tick process of a station with arbitrary precision, see {@link #tick(int, int, int, Definition, Environment)}. */
+    static BigInteger tick(int op, BigInteger n, int k, Definition definition, Environment env) {
+        var occupied = n.signum() > 0;
+        return switch (op) {
+            case NOP -> BigInteger.ZERO;
+            case CREATE -> n.signum() == 0 ? BigInteger.ONE : BigInteger.ZERO;
+            case DOT -> occupied ? BigInteger.ONE : BigInteger.ZERO;
+            case DUP -> n;
+            case DEC -> n.subtract(BigInteger.ONE);
+            case SPLIT -> k > 0 ? n.divide(BigInteger.valueOf(k)) : BigInteger.ZERO;
+            case SYNTHETIC -> definition.calculate(n, BigInteger.valueOf(k));
+            case BYTE_IN -> BigInteger.valueOf(occupied ? env.input().readByte() : 0);
+            case NUM_IN -> BigInteger.valueOf(occupied ? env.input().readInteger() : 0);
+            case BYTE_OUT -> {
+                if (occupied) {
+                    int value = n.mod(BYTE).intValue();
+                    env.output().write(value);
+                    env.print("%c", (char)value);
+                }
+                yield BigInteger.ZERO;
+            }
+            case BYTE_ERR -> {
+                if (occupied) {
+                    int value = n.mod(BYTE).intValue();
+                    env.error().write(value);
+                    env.print("%c", (char)value);
+                }
+                yield BigInteger.ZERO;
+            }
+            case NUM_OUT -> {
+                if (occupied) {
+                    env.output(n.toString() + settings.numberSeparator());
+                    env.print("%d", n);
+                }
+                yield BigInteger.ZERO;
+            }
+            case PAUSE, HALT -> BigInteger.ZERO;  // done after tick
+            default -> throw new IllegalArgumentException("invalid opcode " + op);
+        };
+    }
+
+    /** Process after tick of a station, only {@link #PAUSE} and {@link #HALT}. */
+    static void posTick(int op, long n, Environment env, Single station) {
+        if (n > 0) {
+            if (op == HALT) {
+                env.halt();
+            } else if (op == PAUSE) {
+                try {
+                    Thread.sleep(n);
+                } catch (InterruptedException ex) {
+                    ex.printStackTrace();
+                    env.print("interrupted during pause at %s", station);
+                    env.halt();
+                }
+            }
+        }
+    }
+
+    private Kernel() {
+        //
+    }
+}
@@ -0,0 +1,455 @@
+package cfh.zirconium.engine;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Wide engine fast-forwarding linear components.
+ * Stations only dispatching their total ({@code o}, {@code O} with one link) or nothing
+ * ({@code 0}, output stations, any other non-I/O station without links) make a tick a linear map
+ * of the group totals. A component of such groups is {@link #skip skipped} by exponentiating
+ * its transition matrix (repeated squaring), while the rest of the network steps normally.
+ * Drones sent by the rest into a component end the skip at that tick;
+ * if the rest is empty and nothing acts when empty, it is not stepped at all.
+ * <p>
+ * A component linked to the rest of the network, or containing output stations, is open:
+ * while not empty, its totals are advanced one tick at a time alongside the rest,
+ * to write its output and send its drones to the rest. Output stations are only part of
+ * components if all are, so the output is written in the same order as by the wide engine.
+ */
+public class LinearEngine extends WideEngine {
+
+    /** Maximal number of groups of a component, the matrix power is cubic in it. */
+    private static final int MAX_GROUPS = 32;
+
+    private final Component[] components;
+    /** Output stations of all components, in execution order. */
+    private final int[] outputs;
+    /** Component and its group (index in {@link Component#groups}) of each output station. */
+    private final int[] outputComponent;
+    private final int[] outputGroup;
+    /** Groups of all components. */
+    private final BitSet frozen;
+    /** Groups not in a component acting even if empty. */
+    private final BitSet always;
+
+    /** Creates an engine for given network. */
+    public LinearEngine(Network network, Environment env) {
+        super(network, env);
+        components = Component.find(net).toArray(new Component[0]);
+        frozen = new BitSet(net.groups());
+        for (var component : components) {
+            for (var g : component.groups) {
+                frozen.set(g);
+            }
+        }
+        outputs = Arrays.stream(net.effects).filter(i -> frozen.get(net.group[i])).toArray();
+        outputComponent = new int[outputs.length];
+        outputGroup = new int[outputs.length];
+        for (var o = 0; o < outputs.length; o++) {
+            var g = net.group[outputs[o]];
+            var c = 0;
+            while (Arrays.stream(components[c].groups).noneMatch(h -> h == g)) {
+                c += 1;
+            }
+            outputComponent[o] = c;
+            outputGroup[o] = components[c].local(g);
+        }
+        always = new BitSet(net.groups());
+        for (var i = 0; i < net.size(); i++) {
+            var g = net.group[i];
+            var op = net.op[i];
+            if (!frozen.get(g) && net.countLinked(g) > 0 && (op == Kernel.CREATE
+                || op == Kernel.SYNTHETIC && net.definitions[i].calculate(0, net.countLinked(g)) > 0)) {
+                always.set(g);
+            }
+        }
+    }
+
+    /** Number of linear components found. */
+    public int components() {
+        return components.length;
+    }
+
+    @Override
+    public long skip(long ticks) {
+        if (components.length == 0 || ticks < 1) {
+            return 0;
+        }
+        var states = new BigInteger[components.length][];
+        // totals of the open components stepped tick by tick, null if skipped at once
+        var totals = new BigInteger[components.length][];
+        var empty = true;
+        var open = false;
+        for (var c = 0; c < components.length; c++) {
+            states[c] = components[c].state(this);
+            empty &= Component.isEmpty(states[c]);
+            if (components[c].open() && !Component.isEmpty(states[c])) {
+                totals[c] = components[c].totals(states[c]);
+                open = true;
+            }
+        }
+        var idle = idle();
+        if (empty && !idle) {
+            return 0;
+        }
+
+        long done;
+        var received = new BigInteger[components.length][];
+        if (idle && !open) {
+            done = ticks;
+            for (var i = 0; i < net.size(); i++) {
+                if (!frozen.get(net.group[i]) && previous(i) != 0) {
+                    load(i, BigInteger.ZERO, BigInteger.ZERO);
+                }
+            }
+        } else {
+            done = 0;
+            var receiving = false;
+            while (done < ticks && !receiving && !env.halted()) {
+                step(frozen);
+                for (var o = 0; o < outputs.length; o++) {
+                    var total = totals[outputComponent[o]];
+                    if (total != null) {
+                        var i = outputs[o];
+                        Kernel.tick(net.op[i], total[outputGroup[o]], net.countLinked(net.group[i]), null, env);
+                    }
+                }
+                for (var c = 0; c < components.length; c++) {
+                    if (totals[c] != null) {
+                        totals[c] = components[c].send(this, totals[c]);
+                    }
+                }
+                done += 1;
+                for (var component : components) {
+                    receiving |= component.receiving(this);
+                }
+            }
+            for (var c = 0; c < components.length; c++) {
+                received[c] = components[c].state(this);
+            }
+        }
+        for (var c = 0; c < components.length; c++) {
+            components[c].advance(this, states[c], done, received[c]);
+        }
+        return done;
+    }
+
+    /** Does the rest of the network stay empty. */
+    private boolean idle() {
+        if (!always.isEmpty()) {
+            return false;
+        }
+        for (var i = 0; i < net.size(); i++) {
+            if (!frozen.get(net.group[i]) && drones(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //==============================================================================================
+
+    /**
+     * Linear component: with the group totals {@code T}, a tick is {@code T' = A T}
+     * and the drones of the stations are {@code x' = B T}.
+     */
+    private static final class Component {
+
+        /** Finds the linear components of a network. */
+        static List<Component> find(Network net) {
+            var groups = net.groups();
+            var factor = new int[groups];
+            var linear = new boolean[groups];
+            var output = new boolean[groups];
+            Arrays.fill(linear, true);
+            for (var i = 0; i < net.size(); i++) {
+                var g = net.group[i];
+                var op = net.op[i];
+                var k = net.countLinked(g);
+                if (op == Kernel.DUP || op == Kernel.SPLIT && k == 1) {
+                    factor[g] += 1;
+                } else if (op == Kernel.BYTE_OUT || op == Kernel.BYTE_ERR || op == Kernel.NUM_OUT) {
+                    output[g] = true;
+                } else if (op != Kernel.NOP
+                    && (k > 0 || Kernel.isEffect(op) || op == Kernel.HALT || op == Kernel.PAUSE)) {
+                    linear[g] = false;
+                }
+            }
+
+            // union-find over links between linear groups
+            var parent = new int[groups];
+            for (var g = 0; g < groups; g++) {
+                parent[g] = g;
+            }
+            for (var g = 0; g < groups; g++) {
+                if (linear[g]) {
+                    for (var l = net.links[g]; l < net.links[g+1]; l++) {
+                        var h = net.group[net.targets[l]];
+                        if (linear[h]) {
+                            parent[root(parent, g)] = root(parent, h);
+                        }
+                    }
+                }
+            }
+            var members = new ArrayList<List<Integer>>(groups);
+            for (var g = 0; g < groups; g++) {
+                members.add(null);
+            }
+            for (var g = 0; g < groups; g++) {
+                if (linear[g]) {
+                    var r = root(parent, g);
+                    if (members.get(r) == null) {
+                        members.set(r, new ArrayList<>());
+                    }
+                    members.get(r).add(g);
+                }
+            }
+
+            var result = new ArrayList<Component>();
+            var outputs = 0;
+            for (var list : members) {
+                if (list == null || list.size() > MAX_GROUPS) {
+                    continue;
+                }
+                var dispatching = false;
+                for (var g : list) {
+                    dispatching |= factor[g] > 0 && net.countLinked(g) > 0;
+                }
+                if (dispatching) {
+                    var component = new Component(net, list.stream().mapToInt(Integer::intValue).toArray(), factor);
+                    result.add(component);
+                    outputs += (int) list.stream().filter(g -> output[g]).count();
+                }
+            }
+            var all = Arrays.stream(net.effects).map(i -> net.group[i]).distinct().count();
+            if (outputs < all) {
+                // output stations left in the rest, the output must be written in order
+                result.removeIf(component -> Arrays.stream(component.groups).anyMatch(g -> output[g]));
+            }
+            return result;
+        }
+
+        private static int root(int[] parent, int g) {
+            while (parent[g] != g) {
+                parent[g] = parent[parent[g]];
+                g = parent[g];
+            }
+            return g;
+        }
+
+        /** Groups of the component. */
+        final int[] groups;
+        /** Single stations of the component. */
+        private final int[] stations;
+        /** Group (index in {@link #groups}) of each station. */
+        private final int[] local;
+        /** Transition of the group totals. */
+        private final BigInteger[][] a;
+        /** Drones of the stations from the group totals. */
+        private final BigInteger[][] b;
+        /** Stations of the rest of the network linked by the component. */
+        private final int[] outside;
+        /** Drones sent to the {@link #outside} stations from the group totals. */
+        private final BigInteger[][] c;
+        /** Does the component contain output stations. */
+        private final boolean output;
+
+        private Component(Network net, int[] groups, int[] factor) {
+            this.groups = groups;
+            var list = new ArrayList<Integer>();
+            for (var g : groups) {
+                for (var i = net.members[g]; i < net.members[g+1]; i++) {
+                    list.add(i);
+                }
+            }
+            stations = list.stream().mapToInt(Integer::intValue).toArray();
+            local = new int[stations.length];
+            var n = groups.length;
+            var m = stations.length;
+            var count = new long[m][n];
+            var rest = new ArrayList<Integer>();
+            var outgoing = new ArrayList<long[]>();
+            for (var j = 0; j < n; j++) {
+                var g = groups[j];
+                for (var l = net.links[g]; l < net.links[g+1]; l++) {
+                    var t = net.targets[l];
+                    var s = list.indexOf(t);
+                    if (s == -1) {
+                        s = rest.indexOf(t);
+                        if (s == -1) {
+                            s = rest.size();
+                            rest.add(t);
+                            outgoing.add(new long[n]);
+                        }
+                        outgoing.get(s)[j] += factor[g] * net.weights[l];
+                    } else {
+                        count[s][j] += factor[g] * net.weights[l];
+                    }
+                }
+            }
+            outside = rest.stream().mapToInt(Integer::intValue).toArray();
+            c = new BigInteger[outside.length][n];
+            for (var r = 0; r < outside.length; r++) {
+                for (var j = 0; j < n; j++) {
+                    c[r][j] = BigInteger.valueOf(outgoing.get(r)[j]);
+                }
+            }
+            output = Arrays.stream(stations).anyMatch(i -> Kernel.isEffect(net.op[i]));
+            b = new BigInteger[m][n];
+            a = new BigInteger[n][n];
+            for (var row : a) {
+                Arrays.fill(row, BigInteger.ZERO);
+            }
+            for (var s = 0; s < m; s++) {
+                var h = 0;
+                while (net.group[stations[s]] != groups[h]) {
+                    h += 1;
+                }
+                local[s] = h;
+                for (var j = 0; j < n; j++) {
+                    b[s][j] = BigInteger.valueOf(count[s][j]);
+                    a[h][j] = a[h][j].add(b[s][j]);
+                }
+            }
+        }
+
+        /** Is the component linked to the rest of the network, or writing output. */
+        boolean open() {
+            return outside.length > 0 || output;
+        }
+
+        /** Index in {@link #groups} of given group. */
+        int local(int group) {
+            var j = 0;
+            while (groups[j] != group) {
+                j += 1;
+            }
+            return j;
+        }
+
+        /**
+         * Sends the drones dispatched to the rest of the network in a tick starting with given group totals.
+         * @return the group totals of the next tick
+         */
+        BigInteger[] send(WideEngine engine, BigInteger[] totals) {
+            var sent = multiply(c, totals);
+            for (var r = 0; r < outside.length; r++) {
+                engine.deliver(outside[r], sent[r]);
+            }
+            return multiply(a, totals);
+        }
+
+        /** Current drones of the stations. */
+        BigInteger[] state(Engine engine) {
+            var x = new BigInteger[stations.length];
+            for (var s = 0; s < x.length; s++) {
+                x[s] = engine.value(stations[s]);
+            }
+            return x;
+        }
+
+        static boolean isEmpty(BigInteger[] x) {
+            for (var value : x) {
+                if (value.signum() != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Has any station received drones in the last (frozen) tick. */
+        boolean receiving(Engine engine) {
+            for (var i : stations) {
+                if (engine.drones(i) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Loads the state after given ticks starting with {@code x}, adding the drones
+         * received from the rest of the network in the last tick, if not {@code null}.
+         */
+        void advance(WideEngine engine, BigInteger[] x, long ticks, BigInteger[] received) {
+            var totals = totals(x);
+            BigInteger[] before;
+            if (ticks == 1) {
+                before = x;
+            } else {
+                totals = multiply(power(a, ticks-2), totals);
+                before = multiply(b, totals);
+                totals = multiply(a, totals);
+            }
+            var after = multiply(b, totals);
+            for (var s = 0; s < stations.length; s++) {
+                engine.load(stations[s], received == null ? after[s] : after[s].add(received[s]), before[s]);
+            }
+        }
+
+        /** Group totals of given drones of the stations. */
+        BigInteger[] totals(BigInteger[] x) {
+            var result = new BigInteger[groups.length];
+            Arrays.fill(result, BigInteger.ZERO);
+            for (var s = 0; s < x.length; s++) {
+                result[local[s]] = result[local[s]].add(x[s]);
+            }
+            return result;
+        }
+
+        private static BigInteger[][] power(BigInteger[][] matrix, long exponent) {
+            var n = matrix.length;
+            var result = new BigInteger[n][n];
+            for (var i = 0; i < n; i++) {
+                Arrays.fill(result[i], BigInteger.ZERO);
+                result[i][i] = BigInteger.ONE;
+            }
+            var square = matrix;
+            while (exponent > 0) {
+                if ((exponent & 1) != 0) {
+                    result = multiply(result, square);
+                }
+                exponent >>= 1;
+                if (exponent > 0) {
+                    square = multiply(square, square);
+                }
+            }
+            return result;
+        }
+
+        private static BigInteger[][] multiply(BigInteger[][] left, BigInteger[][] right) {
+            var result = new BigInteger[left.length][];
+            for (var i = 0; i < left.length; i++) {
+                result[i] = multiply(right, left[i], true);
+            }
+            return result;
+        }
+
+        private static BigInteger[] multiply(BigInteger[][] matrix, BigInteger[] vector) {
+            return multiply(matrix, vector, false);
+        }
+
+        /** Matrix times column vector, or row vector times matrix if {@code transposed}. */
+        private static BigInteger[] multiply(BigInteger[][] matrix, BigInteger[] vector, boolean transposed) {
+            var size = transposed ? matrix[0].length : matrix.length;
+            var result = new BigInteger[size];
+            for (var i = 0; i < size; i++) {
+                var sum = BigInteger.ZERO;
+                for (var j = 0; j < vector.length; j++) {
+                    var factor = transposed ? matrix[j][i] : matrix[i][j];
+                    if (factor.signum() != 0 && vector[j].signum() != 0) {
+                        sum = sum.add(factor.equals(BigInteger.ONE) ? vector[j] : factor.multiply(vector[j]));
+                    }
+                }
+                result[i] = sum;
+            }
+            return result;
+        }
+    }
+}
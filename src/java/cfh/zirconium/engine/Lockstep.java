@@ -0,0 +1,250 @@
+package cfh.zirconium.engine;
+
+import static cfh.zirconium.engine.Kernel.*;
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cfh.zirconium.Environment;
+import cfh.zirconium.Program;
+
+/**
+ * Executes several instances of a program in lockstep, each with its own environment (input and output).
+ * The instances share the network; the counters are lane arrays, all instances of a station
+ * are contiguous ({@code drones[station * lanes + lane]}), so each station is executed
+ * once per tick by a loop over the lanes.
+ * <p>
+ * Halted instances are masked out by moving them behind the running ones,
+ * their state is kept but not executed anymore.
+ */
+public final class Lockstep {
+
+    /** Creates lockstep instances of given program, one for each environment. */
+    public static Lockstep of(Program program, List<Environment> environments) {
+        return new Lockstep(Network.of(program.stations()), environments);
+    }
+
+    private final Network net;
+    private final int lanes;
+    /** Environment of each instance, and of each lane. */
+    private final Environment[] environments;
+    private final Environment[] envs;
+    /** Instance executed by each lane, and lane of each instance. */
+    private final int[] instances;
+    private final int[] lane;
+    /** Number of running instances, in lanes {@code 0..running-1}. */
+    private int running;
+    private long ticks;
+    /** Tick each instance halted, zero if running. */
+    private final long[] halted;
+
+    private final int[] drones;
+    private final int[] previous;
+    private final int[] totals;
+    /** Number dispatched by the current station in each lane. */
+    private final int[] numbers;
+
+    /** Creates lockstep instances of given network, one for each environment. */
+    public Lockstep(Network network, List<Environment> environments) {
+        this.net = requireNonNull(network);
+        lanes = environments.size();
+        this.environments = environments.toArray(new Environment[lanes]);
+        envs = this.environments.clone();
+        instances = new int[lanes];
+        lane = new int[lanes];
+        halted = new long[lanes];
+        drones = new int[net.size() * lanes];
+        previous = new int[net.size() * lanes];
+        totals = new int[net.groups() * lanes];
+        numbers = new int[lanes];
+        reset();
+    }
+
+    /** Number of instances. */
+    public int instances() {
+        return lanes;
+    }
+
+    /** Number of instances still running. */
+    public int running() {
+        return running;
+    }
+
+    /** Number of ticks executed since reset. */
+    public long ticks() {
+        return ticks;
+    }
+
+    /** Tick the given instance halted, zero if still running. */
+    public long halted(int instance) {
+        return halted[instance];
+    }
+
+    /** Number of drones on the station with given index, in given instance. */
+    public int drones(int instance, int index) {
+        return drones[index * lanes + lane[instance]];
+    }
+
+    /** Resets all instances and their environments. */
+    public void reset() {
+        Arrays.fill(drones, 0);
+        Arrays.fill(previous, 0);
+        Arrays.fill(halted, 0);
+        for (var i = 0; i < lanes; i++) {
+            instances[i] = i;
+            lane[i] = i;
+            envs[i] = environments[i];
+            envs[i].reset();
+            envs[i].start();
+        }
+        running = lanes;
+        ticks = 0;
+    }
+
+    /**
+     * Executes a tick on all running instances.
+     * @return number of instances still running
+     */
+    public int step() {
+        if (running == 0) {
+            return 0;
+        }
+        ticks += 1;
+        var size = net.size();
+        var active = running;
+        for (var i = 0; i < size; i++) {
+            var base = i * lanes;
+            System.arraycopy(drones, base, previous, base, active);
+            Arrays.fill(drones, base, base + active, 0);
+        }
+
+        var members = net.members;
+        var groups = net.groups();
+        for (var g = 0; g < groups; g++) {
+            var base = g * lanes;
+            Arrays.fill(totals, base, base + active, 0);
+            for (var i = members[g]; i < members[g+1]; i++) {
+                var from = i * lanes;
+                for (var a = 0; a < active; a++) {
+                    totals[base + a] += previous[from + a];
+                }
+            }
+        }
+
+        var op = net.op;
+        var group = net.group;
+        var definitions = net.definitions;
+        var links = net.links;
+        var targets = net.targets;
+        var weights = net.weights;
+        for (var i = 0; i < size; i++) {
+            var code = op[i];
+            var g = group[i];
+            if (code == NOP || code == PAUSE || code == HALT || links[g] == links[g+1] && !isEffect(code)) {
+                continue;
+            }
+            var base = g * lanes;
+            var k = net.countLinked(g);
+            var definition = definitions[i];
+            // a loop per opcode, the lanes of a station are executed without dispatching
+            switch (code) {
+                case CREATE -> {
+                    for (var a = 0; a < active; a++) {
+                        numbers[a] = totals[base + a] == 0 ? 1 : 0;
+                    }
+                }
+                case DOT -> {
+                    for (var a = 0; a < active; a++) {
+                        numbers[a] = totals[base + a] > 0 ? 1 : 0;
+                    }
+                }
+                case DUP -> {
+                    for (var a = 0; a < active; a++) {
+                        numbers[a] = Math.max(0, totals[base + a]);
+                    }
+                }
+                case DEC -> {
+                    for (var a = 0; a < active; a++) {
+                        numbers[a] = Math.max(0, totals[base + a] - 1);
+                    }
+                }
+                case SPLIT -> {
+                    for (var a = 0; a < active; a++) {
+                        numbers[a] = Math.max(0, totals[base + a] / k);
+                    }
+                }
+                case SYNTHETIC -> {
+                    for (var a = 0; a < active; a++) {
+                        numbers[a] = Math.max(0, definition.calculate(totals[base + a], k));
+                    }
+                }
+                default -> {
+                    for (var a = 0; a < active; a++) {
+                        numbers[a] = Math.max(0, Kernel.tick(code, totals[base + a], k, null, envs[a]));
+                    }
+                }
+            }
+            for (var l = links[g]; l < links[g+1]; l++) {
+                var to = targets[l] * lanes;
+                var weight = weights[l];
+                for (var a = 0; a < active; a++) {
+                    drones[to + a] += numbers[a] * weight;
+                }
+            }
+        }
+
+        for (var i : net.posTicks) {
+            var base = group[i] * lanes;
+            for (var a = 0; a < active; a++) {
+                Kernel.posTick(op[i], totals[base + a], envs[a], net.single(i));
+            }
+        }
+
+        for (var a = active-1; a >= 0; a--) {
+            if (envs[a].halted()) {
+                halted[instances[a]] = ticks;
+                running -= 1;
+                swap(a, running);
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Executes ticks until all instances halted.
+     * @param count maximal number of ticks
+     * @return number of ticks executed
+     */
+    public long run(long count) {
+        var done = 0L;
+        while (done < count && running > 0) {
+            step();
+            done += 1;
+        }
+        return done;
+    }
+
+    /** Exchanges the instances executed by two lanes. */
+    private void swap(int a, int b) {
+        if (a == b) {
+            return;
+        }
+        for (var i = 0; i < net.size(); i++) {
+            swap(drones, i * lanes + a, i * lanes + b);
+            swap(previous, i * lanes + a, i * lanes + b);
+        }
+        var env = envs[a];
+        envs[a] = envs[b];
+        envs[b] = env;
+        swap(instances, a, b);
+        lane[instances[a]] = a;
+        lane[instances[b]] = b;
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        var tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+}
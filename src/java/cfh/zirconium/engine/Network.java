@@ -0,0 +1,146 @@
+package cfh.zirconium.engine;
+
+import static cfh.zirconium.engine.Kernel.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cfh.zirconium.expr.Definition;
+import cfh.zirconium.net.*;
+
+/**
+ * Lowered form of a program: the stations as primitive arrays.
+ * Single stations are indexed in the order they are executed by the program,
+ * childs of a bound station are contiguous.
+ * Each single station (or bound station) is a group sharing the total number of drones
+ * and the linked stations (compressed rows: {@code targets[links[g]..links[g+1]]}).
+ * A station linked by several childs of a bound station is only contained once,
+ * with the number of links as weight.
+ */
+public final class Network {
+
+    /** Creates the network for given stations, in the order they are executed. */
+    public static Network of(Collection<Station> stations) {
+        var singles = new ArrayList<Single>();
+        var members = new ArrayList<Integer>();
+        for (var station : stations) {
+            members.add(singles.size());
+            station.stations().forEach(singles::add);
+        }
+        members.add(singles.size());
+        return new Network(singles, members);
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    private final Single[] singles;
+    private final Map<Single, Integer> indices;
+
+    /** Opcode of each single station, see {@link Kernel}. */
+    final int[] op;
+    /** Group of each single station. */
+    final int[] group;
+    /** Definition of each single station, specialized for its K; {@code null} if not synthetic. */
+    final Definition[] definitions;
+    /** First member of each group, one extra entry for the end. */
+    final int[] members;
+    /** First link of each group, one extra entry for the end. */
+    final int[] links;
+    /** Linked single stations, distinct for each group. */
+    final int[] targets;
+    /** Number of links to each target. */
+    final int[] weights;
+    /** Number of linked stations (K) of each group, sum of the weights. */
+    private final int[] counts;
+    /** Stations doing I/O during the tick ({@code ?}, {@code %}, {@code &}, {@code _}, {@code `}). */
+    final int[] effects;
+    /** Stations acting after the tick ({@code !}, {@code ;}). */
+    final int[] posTicks;
+
+    private Network(List<Single> list, List<Integer> first) {
+        var size = list.size();
+        var groups = first.size() - 1;
+        singles = list.toArray(new Single[size]);
+        indices = new HashMap<>();
+        for (var i = 0; i < size; i++) {
+            indices.put(singles[i], i);
+        }
+
+        op = new int[size];
+        group = new int[size];
+        definitions = new Definition[size];
+        members = first.stream().mapToInt(Integer::intValue).toArray();
+        var effectList = new ArrayList<Integer>();
+        var posList = new ArrayList<Integer>();
+        for (var g = 0; g < groups; g++) {
+            for (var i = members[g]; i < members[g+1]; i++) {
+                group[i] = g;
+                op[i] = opcode(singles[i]);
+                if (singles[i] instanceof SyntheticStation synthetic) {
+                    definitions[i] = synthetic.specialized();
+                }
+                if (isEffect(op[i])) {
+                    effectList.add(i);
+                } else if (op[i] == HALT || op[i] == PAUSE) {
+                    posList.add(i);
+                }
+            }
+        }
+        effects = effectList.stream().mapToInt(Integer::intValue).toArray();
+        posTicks = posList.stream().mapToInt(Integer::intValue).toArray();
+
+        links = new int[groups+1];
+        counts = new int[groups];
+        var targetList = new ArrayList<Integer>();
+        var weightList = new ArrayList<Integer>();
+        var linked = new LinkedHashMap<Integer, Integer>();
+        for (var g = 0; g < groups; g++) {
+            links[g] = targetList.size();
+            linked.clear();
+            for (var i = members[g]; i < members[g+1]; i++) {
+                singles[i].linked().forEach(s -> linked.merge(index(s), 1, Integer::sum));
+            }
+            for (var entry : linked.entrySet()) {
+                targetList.add(entry.getKey());
+                weightList.add(entry.getValue());
+                counts[g] += entry.getValue();
+            }
+        }
+        links[groups] = targetList.size();
+        targets = targetList.stream().mapToInt(Integer::intValue).toArray();
+        weights = weightList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Number of single stations. */
+    public int size() {
+        return singles.length;
+    }
+
+    /** Number of groups (single or bound stations). */
+    public int groups() {
+        return members.length - 1;
+    }
+
+    /** Single station with given index. */
+    public Single single(int index) {
+        return singles[index];
+    }
+
+    /** Index of given single station. */
+    public int index(Single station) {
+        var index = indices.get(station);
+        if (index == null) {
+            throw new IllegalArgumentException("not in network: " + station);
+        }
+        return index;
+    }
+
+    /** Number of linked stations (K) of given group, counting each link. */
+    int countLinked(int group) {
+        return counts[group];
+    }
+}
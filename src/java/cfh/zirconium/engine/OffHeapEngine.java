@@ -0,0 +1,237 @@
+package cfh.zirconium.engine;
+
+import static java.util.Objects.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Flat engine keeping the drone counters and the link tables outside the heap,
+ * in a direct buffer or in a file mapped to memory.
+ * The buffer is an image of the state: a header, the counters (current and previous),
+ * the group totals and the lowered network; it can be saved and loaded as is.
+ * Only the definitions of synthetic stations and the I/O stations remain on the heap.
+ * <p>
+ * A mapped file is scratch storage: it is overwritten when the engine is created,
+ * use {@link #save} and {@link #load} to keep the state of a run.
+ */
+public class OffHeapEngine implements Engine {
+
+    /** Creates a factory of engines keeping their state in given file, mapped to memory; the file is overwritten. */
+    public static Factory mapped(Path file) {
+        requireNonNull(file);
+        return (network, env) -> new OffHeapEngine(network, env, file);
+    }
+
+    private static final int MAGIC = 0x5A724E31;
+    /** Header: magic, number of stations, groups and links, offset of current counters. */
+    private static final int HEADER = 5;
+    private static final int CURRENT = 4;
+
+    private final Network net;
+    private final Environment env;
+    private final int size;
+    private final int groups;
+
+    /** File the buffer is mapped to, {@code null} if not mapped. */
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final IntBuffer mem;
+
+    /** Offsets of the arrays in {@link #mem}. */
+    private int drones;
+    private int previous;
+    private final int totals;
+    private final int members;
+    private final int op;
+    private final int group;
+    private final int counts;
+    private final int links;
+    private final int targets;
+    private final int weights;
+
+    /** Creates an engine for given network, using a direct buffer. */
+    public OffHeapEngine(Network network, Environment env) {
+        this(network, env, null);
+    }
+
+    /** Creates an engine for given network, mapping given file (overwritten); {@code null} for a direct buffer. */
+    public OffHeapEngine(Network network, Environment env, Path file) {
+        this.net = requireNonNull(network);
+        this.env = requireNonNull(env);
+        size = net.size();
+        groups = net.groups();
+        var linkCount = net.targets.length;
+
+        drones = HEADER;
+        previous = drones + size;
+        totals = previous + size;
+        members = totals + groups;
+        op = members + groups + 1;
+        group = op + size;
+        counts = group + size;
+        links = counts + groups;
+        targets = links + groups + 1;
+        weights = targets + linkCount;
+        var bytes = (long) (weights + linkCount) * Integer.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("network too big: " + bytes + " bytes");
+        }
+
+        if (file == null) {
+            channel = null;
+            buffer = ByteBuffer.allocateDirect((int) bytes);
+        } else {
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.truncate(bytes);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        mem = buffer.asIntBuffer();
+
+        mem.put(0, MAGIC);
+        mem.put(1, size);
+        mem.put(2, groups);
+        mem.put(3, linkCount);
+        mem.put(CURRENT, drones);
+        mem.put(members, net.members);
+        mem.put(op, net.op);
+        mem.put(group, net.group);
+        for (var g = 0; g < groups; g++) {
+            mem.put(counts + g, net.countLinked(g));
+        }
+        mem.put(links, net.links);
+        mem.put(targets, net.targets);
+        mem.put(weights, net.weights);
+    }
+
+    @Override
+    public void reset() {
+        for (var i = drones; i < totals; i++) {
+            mem.put(i, 0);
+        }
+    }
+
+    @Override
+    public boolean step() {
+        var tmp = previous;
+        previous = drones;
+        drones = tmp;
+        mem.put(CURRENT, drones);
+        for (var i = 0; i < size; i++) {
+            mem.put(drones + i, 0);
+        }
+
+        for (var g = 0; g < groups; g++) {
+            var total = 0;
+            for (var i = mem.get(members + g); i < mem.get(members + g+1); i++) {
+                total += mem.get(previous + i);
+            }
+            mem.put(totals + g, total);
+        }
+
+        var definitions = net.definitions;
+        for (var i = 0; i < size; i++) {
+            var g = mem.get(group + i);
+            var number = Kernel.tick(mem.get(op + i), mem.get(totals + g), mem.get(counts + g), definitions[i], env);
+            if (number > 0) {
+                for (var l = mem.get(links + g); l < mem.get(links + g+1); l++) {
+                    var t = drones + mem.get(targets + l);
+                    mem.put(t, mem.get(t) + number * mem.get(weights + l));
+                }
+            }
+        }
+
+        for (var i : net.posTicks) {
+            Kernel.posTick(mem.get(op + i), mem.get(totals + mem.get(group + i)), env, net.single(i));
+        }
+        var changed = false;
+        for (var i = 0; i < size && !changed; i++) {
+            changed = mem.get(drones + i) != mem.get(previous + i);
+        }
+        return !changed;
+    }
+
+    @Override
+    public int drones(int index) {
+        return mem.get(drones + index);
+    }
+
+    @Override
+    public int previous(int index) {
+        return mem.get(previous + index);
+    }
+
+    /** Writes the state image to given channel. */
+    public void save(WritableByteChannel out) throws IOException {
+        var image = buffer.duplicate().clear();
+        while (image.hasRemaining()) {
+            out.write(image);
+        }
+    }
+
+    /** 
+     * Reads a state image, written by {@link #save} for the same network, from given channel.
+     * The header and the tables of the image must be equal to the ones of this engine,
+     * only the counters are copied.
+     */
+    public void load(ReadableByteChannel in) throws IOException {
+        var header = ByteBuffer.allocate(HEADER * Integer.BYTES).order(ByteOrder.nativeOrder());
+        read(in, header);
+        var values = header.flip().asIntBuffer();
+        for (var i = 0; i < CURRENT; i++) {
+            if (values.get(i) != mem.get(i)) {
+                throw new IOException("state of another network");
+            }
+        }
+        var current = values.get(CURRENT);
+        if (current != HEADER && current != HEADER + size) {
+            throw new IOException("invalid state header: " + current);
+        }
+        var image = ByteBuffer.allocate(buffer.capacity() - header.capacity()).order(ByteOrder.nativeOrder());
+        read(in, image);
+        var state = image.flip().asIntBuffer();
+        if (!state.slice(members - HEADER, state.limit() - (members - HEADER)).equals(mem.slice(members, mem.limit() - members))) {
+            throw new IOException("state of another network");
+        }
+        mem.put(HEADER, state, 0, members - HEADER);
+        drones = current;
+        previous = current == HEADER ? HEADER + size : HEADER;
+        mem.put(CURRENT, drones);
+    }
+
+    private static void read(ReadableByteChannel in, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (in.read(dst) < 0) {
+                throw new IOException("truncated state");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                ((MappedByteBuffer) buffer).force();
+                channel.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
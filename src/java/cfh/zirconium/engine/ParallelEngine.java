@@ -0,0 +1,301 @@
+package cfh.zirconium.engine;
+
+import static java.util.Objects.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Phaser;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Engine partitioning the network across worker threads.
+ * Each partition owns a contiguous range of groups; drones sent to stations of other partitions
+ * are buffered per partition pair and added by the owning partition after all have ticked.
+ * Stations doing I/O are executed by the calling thread only, in index order, before its own partition;
+ * stations acting after the tick ({@code !}, {@code ;}) are executed by it after all partitions are done.
+ * <p>
+ * A tick has three phases separated by barriers: preparing (previous drones, totals),
+ * ticking, and adding the buffered drones.
+ */
+public class ParallelEngine implements Engine {
+
+    private final Network net;
+    private final Environment env;
+
+    private int[] drones;
+    private int[] previous;
+    private final int[] totals;
+
+    /** Number of partitions, partition 0 is executed by the calling thread. */
+    private final int count;
+    /** First group of each partition, one extra entry for the end. */
+    private final int[] first;
+    /** Partition owning each station. */
+    private final int[] owner;
+    /** Stations ticked by each partition, without I/O stations. */
+    private final int[][] work;
+    /** Buffered targets and number of drones, indexed by {@code from * count + to}. */
+    private final int[][] bufferTargets;
+    private final int[][] bufferNumbers;
+    private final int[] bufferSizes;
+    /** Changed flag for each partition. */
+    private final boolean[] changed;
+
+    private final Phaser phaser;
+    /** Worker threads, partition {@code p} executed by {@code workers[p-1]}. */
+    private final Thread[] workers;
+    private volatile boolean closed = false;
+    private volatile Throwable failure = null;
+
+    /** Creates an engine for given network, using one partition for each available processor. */
+    public ParallelEngine(Network network, Environment env) {
+        this(network, env, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Creates an engine for given network with given number of partitions (threads). */
+    public ParallelEngine(Network network, Environment env, int partitions) {
+        this.net = requireNonNull(network);
+        this.env = requireNonNull(env);
+        if (partitions < 1) {
+            throw new IllegalArgumentException("invalid number of partitions: " + partitions);
+        }
+        drones = new int[net.size()];
+        previous = new int[net.size()];
+        totals = new int[net.groups()];
+
+        count = Math.max(1, Math.min(partitions, net.groups()));
+        first = partition(count);
+        owner = new int[net.size()];
+        work = new int[count][];
+        for (var p = 0; p < count; p++) {
+            var list = new ArrayList<Integer>();
+            for (var i = net.members[first[p]]; i < net.members[first[p+1]]; i++) {
+                owner[i] = p;
+                if (!Kernel.isEffect(net.op[i])) {
+                    list.add(i);
+                }
+            }
+            work[p] = list.stream().mapToInt(Integer::intValue).toArray();
+        }
+        bufferTargets = new int[count*count][16];
+        bufferNumbers = new int[count*count][16];
+        bufferSizes = new int[count*count];
+        changed = new boolean[count];
+
+        phaser = new Phaser(count);
+        workers = new Thread[count-1];
+        for (var p = 1; p < count; p++) {
+            var partition = p;
+            var thread = new Thread(() -> work(partition), "engine-" + p);
+            thread.setDaemon(true);
+            thread.start();
+            workers[p-1] = thread;
+        }
+    }
+
+    /** Splits the groups in partitions of about the same number of stations and links. */
+    private int[] partition(int parts) {
+        var groups = net.groups();
+        var weight = (long) net.size() + net.targets.length;
+        var result = new int[parts+1];
+        var g = 0;
+        var sum = 0L;
+        for (var p = 1; p < parts; p++) {
+            var limit = weight * p / parts;
+            while (g < groups-(parts-p) && sum < limit) {
+                sum += (net.members[g+1] - net.members[g]) + (net.links[g+1] - net.links[g]);
+                g += 1;
+            }
+            result[p] = g;
+        }
+        result[parts] = groups;
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(drones, 0);
+        Arrays.fill(previous, 0);
+    }
+
+    @Override
+    public boolean step() {
+        if (closed) {
+            throw new IllegalStateException("engine closed");
+        }
+        var tmp = previous;
+        previous = drones;
+        drones = tmp;
+
+        phaser.arriveAndAwaitAdvance();         // start
+        try {
+            prepare(0);
+        } catch (RuntimeException | Error ex) {
+            failure = ex;
+        }
+        phaser.arriveAndAwaitAdvance();
+        try {
+            for (var i : net.effects) {
+                var g = net.group[i];
+                var number = Kernel.tick(net.op[i], totals[g], net.countLinked(g), null, env);
+                if (number > 0) {
+                    send(0, g, number);
+                }
+            }
+            tick(0);
+        } catch (RuntimeException | Error ex) {
+            failure = ex;
+        }
+        phaser.arriveAndAwaitAdvance();
+        try {
+            reduce(0);
+        } catch (RuntimeException | Error ex) {
+            failure = ex;
+        }
+        phaser.arriveAndAwaitAdvance();         // done
+        if (failure != null) {
+            var ex = failure;
+            failure = null;
+            throw new IllegalStateException("tick failed", ex);
+        }
+
+        for (var i : net.posTicks) {
+            Kernel.posTick(net.op[i], totals[net.group[i]], env, net.single(i));
+        }
+        for (var p = 0; p < count; p++) {
+            if (changed[p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Stops the worker threads, waiting for them to terminate. */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            phaser.arriveAndDeregister();
+            var interrupted = false;
+            for (var thread : workers) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Worker thread loop for given partition. */
+    private void work(int p) {
+        while (true) {
+            phaser.arriveAndAwaitAdvance();     // start
+            if (closed) {
+                phaser.arriveAndDeregister();
+                return;
+            }
+            try {
+                prepare(p);
+            } catch (RuntimeException | Error ex) {
+                failure = ex;
+            }
+            phaser.arriveAndAwaitAdvance();
+            try {
+                tick(p);
+            } catch (RuntimeException | Error ex) {
+                failure = ex;
+            }
+            phaser.arriveAndAwaitAdvance();
+            try {
+                reduce(p);
+            } catch (RuntimeException | Error ex) {
+                failure = ex;
+            }
+            phaser.arriveAndAwaitAdvance();     // done
+        }
+    }
+
+    /** Phase 1: clears the drones and computes the totals of the groups of a partition. */
+    private void prepare(int p) {
+        var members = net.members;
+        Arrays.fill(drones, members[first[p]], members[first[p+1]], 0);
+        for (var g = first[p]; g < first[p+1]; g++) {
+            var total = 0;
+            for (var i = members[g]; i < members[g+1]; i++) {
+                total += previous[i];
+            }
+            totals[g] = total;
+        }
+    }
+
+    /** Phase 2: ticks the stations of a partition. */
+    private void tick(int p) {
+        var op = net.op;
+        var group = net.group;
+        var definitions = net.definitions;
+        for (var i : work[p]) {
+            var g = group[i];
+            var number = Kernel.tick(op[i], totals[g], net.countLinked(g), definitions[i], env);
+            if (number > 0) {
+                send(p, g, number);
+            }
+        }
+    }
+
+    /** Sends drones from partition {@code p} to all stations linked by group {@code g}. */
+    private void send(int p, int g, int number) {
+        var links = net.links;
+        var targets = net.targets;
+        var weights = net.weights;
+        for (var l = links[g]; l < links[g+1]; l++) {
+            var t = targets[l];
+            var q = owner[t];
+            if (q == p) {
+                drones[t] += number * weights[l];
+            } else {
+                var b = p * count + q;
+                var size = bufferSizes[b];
+                if (size == bufferTargets[b].length) {
+                    bufferTargets[b] = Arrays.copyOf(bufferTargets[b], 2*size);
+                    bufferNumbers[b] = Arrays.copyOf(bufferNumbers[b], 2*size);
+                }
+                bufferTargets[b][size] = t;
+                bufferNumbers[b][size] = number * weights[l];
+                bufferSizes[b] = size + 1;
+            }
+        }
+    }
+
+    /** Phase 3: adds the drones buffered for a partition and checks for changes. */
+    private void reduce(int q) {
+        for (var p = 0; p < count; p++) {
+            var b = p * count + q;
+            var buffTargets = bufferTargets[b];
+            var buffNumbers = bufferNumbers[b];
+            for (var j = 0; j < bufferSizes[b]; j++) {
+                drones[buffTargets[j]] += buffNumbers[j];
+            }
+            bufferSizes[b] = 0;
+        }
+        var from = net.members[first[q]];
+        var to = net.members[first[q+1]];
+        changed[q] = !Arrays.equals(drones, from, to, previous, from, to);
+    }
+
+    @Override
+    public int drones(int index) {
+        return drones[index];
+    }
+
+    @Override
+    public int previous(int index) {
+        return previous[index];
+    }
+}
@@ -0,0 +1,148 @@
+package cfh.zirconium.engine;
+
+import static java.util.Objects.*;
+
+import java.util.BitSet;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Engine only ticking occupied stations, the cost of a tick scales with the activity
+ * instead of the size of the network.
+ * Stations acting when empty ({@code @}, synthetic stations dispatching for {@code N = 0})
+ * are always ticked. Groups are processed in index order, so the I/O order is the same as
+ * for the full sweep.
+ */
+public class SparseEngine implements Engine {
+
+    private final Network net;
+    private final Environment env;
+
+    private final int[] drones;
+    private final int[] previous;
+    private final int[] totals;
+
+    /** Groups acting even if empty. */
+    private final BitSet always;
+    /** Groups with drones received in last tick. */
+    private BitSet occupied;
+    /** Groups occupied before last tick, may have previous drones. */
+    private BitSet stale;
+    /** Groups to tick. */
+    private final BitSet active;
+
+    /** Creates an engine for given network. */
+    public SparseEngine(Network network, Environment env) {
+        this.net = requireNonNull(network);
+        this.env = requireNonNull(env);
+        drones = new int[net.size()];
+        previous = new int[net.size()];
+        totals = new int[net.groups()];
+
+        always = new BitSet(net.groups());
+        for (var i = 0; i < net.size(); i++) {
+            var g = net.group[i];
+            var op = net.op[i];
+            if (op == Kernel.CREATE
+                || op == Kernel.SYNTHETIC && net.definitions[i].calculate(0, net.countLinked(g)) > 0) {
+                always.set(g);
+            }
+        }
+        occupied = new BitSet(net.groups());
+        stale = new BitSet(net.groups());
+        active = new BitSet(net.groups());
+    }
+
+    @Override
+    public void reset() {
+        for (var g = occupied.nextSetBit(0); g >= 0; g = occupied.nextSetBit(g+1)) {
+            clear(g, drones);
+        }
+        for (var g = stale.nextSetBit(0); g >= 0; g = stale.nextSetBit(g+1)) {
+            clear(g, previous);
+            totals[g] = 0;
+        }
+        occupied.clear();
+        stale.clear();
+    }
+
+    @Override
+    public boolean step() {
+        var members = net.members;
+        for (var g = stale.nextSetBit(0); g >= 0; g = stale.nextSetBit(g+1)) {
+            clear(g, previous);
+            totals[g] = 0;
+        }
+        for (var g = occupied.nextSetBit(0); g >= 0; g = occupied.nextSetBit(g+1)) {
+            var total = 0;
+            for (var i = members[g]; i < members[g+1]; i++) {
+                previous[i] = drones[i];
+                drones[i] = 0;
+                total += previous[i];
+            }
+            totals[g] = total;
+        }
+        var tmp = stale;
+        stale = occupied;
+        occupied = tmp;
+        occupied.clear();
+
+        active.clear();
+        active.or(stale);
+        active.or(always);
+        var op = net.op;
+        var group = net.group;
+        var definitions = net.definitions;
+        var links = net.links;
+        var targets = net.targets;
+        var weights = net.weights;
+        for (var g = active.nextSetBit(0); g >= 0; g = active.nextSetBit(g+1)) {
+            for (var i = members[g]; i < members[g+1]; i++) {
+                var number = Kernel.tick(op[i], totals[g], net.countLinked(g), definitions[i], env);
+                if (number > 0) {
+                    for (var l = links[g]; l < links[g+1]; l++) {
+                        var t = targets[l];
+                        drones[t] += number * weights[l];
+                        occupied.set(group[t]);
+                    }
+                }
+            }
+        }
+
+        for (var i : net.posTicks) {
+            Kernel.posTick(op[i], totals[group[i]], env, net.single(i));
+        }
+
+        return unchanged(stale) && unchanged(occupied);
+    }
+
+    /** Clears the given counters of all members of a group. */
+    private void clear(int g, int[] counters) {
+        for (var i = net.members[g]; i < net.members[g+1]; i++) {
+            counters[i] = 0;
+        }
+    }
+
+    /** Checks if all members of given groups are unchanged. */
+    private boolean unchanged(BitSet groups) {
+        var members = net.members;
+        for (var g = groups.nextSetBit(0); g >= 0; g = groups.nextSetBit(g+1)) {
+            for (var i = members[g]; i < members[g+1]; i++) {
+                if (drones[i] != previous[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int drones(int index) {
+        return drones[index];
+    }
+
+    @Override
+    public int previous(int index) {
+        return previous[index];
+    }
+}
@@ -0,0 +1,244 @@
+package cfh.zirconium.engine;
+
+import static java.util.Objects.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import cfh.zirconium.Environment;
+
+/**
+ * Engine without overflow: drones are counted using {@code long} arithmetic,
+ * only stations (and totals) exceeding its range are promoted to {@link BigInteger}.
+ * A promoted counter is always beyond the {@code long} range, so each value has only one representation.
+ * <p>
+ * {@link #drones} is saturated to {@code int}, use {@link #value} for the exact number.
+ */
+public class WideEngine implements Engine {
+
+    protected final Network net;
+    protected final Environment env;
+
+    private long[] drones;
+    private long[] previous;
+    private final long[] totals;
+
+    /** Promoted counters, {@code null} if in {@code long} range. */
+    private BigInteger[] bigDrones;
+    private BigInteger[] bigPrevious;
+    private final BigInteger[] bigTotals;
+    /** Number of promoted counters in {@link #bigDrones} and {@link #bigPrevious}. */
+    private int promoted = 0;
+    private int promotedPrevious = 0;
+
+    /** Creates an engine for given network. */
+    public WideEngine(Network network, Environment env) {
+        this.net = requireNonNull(network);
+        this.env = requireNonNull(env);
+        drones = new long[net.size()];
+        previous = new long[net.size()];
+        totals = new long[net.groups()];
+        bigDrones = new BigInteger[net.size()];
+        bigPrevious = new BigInteger[net.size()];
+        bigTotals = new BigInteger[net.groups()];
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(drones, 0);
+        Arrays.fill(previous, 0);
+        Arrays.fill(bigDrones, null);
+        Arrays.fill(bigPrevious, null);
+        promoted = 0;
+        promotedPrevious = 0;
+    }
+
+    @Override
+    public boolean step() {
+        return step(null);
+    }
+
+    /**
+     * Executes one tick without the given groups: these are not ticked, but their counters
+     * are cleared like all others, so they only hold the drones sent by other groups in this tick.
+     * @param frozen groups not ticked, {@code null} for none
+     */
+    protected boolean step(BitSet frozen) {
+        var tmp = previous;
+        previous = drones;
+        drones = tmp;
+        Arrays.fill(drones, 0);
+        var bigTmp = bigPrevious;
+        bigPrevious = bigDrones;
+        bigDrones = bigTmp;
+        if (promotedPrevious > 0) {
+            Arrays.fill(bigDrones, null);
+        }
+        promotedPrevious = promoted;
+        promoted = 0;
+
+        var members = net.members;
+        var groups = net.groups();
+        for (var g = 0; g < groups; g++) {
+            if (frozen != null && frozen.get(g)) {
+                totals[g] = 0;
+                bigTotals[g] = null;
+                continue;
+            }
+            var total = 0L;
+            BigInteger big = null;
+            for (var i = members[g]; i < members[g+1]; i++) {
+                if (big == null && bigPrevious[i] == null) {
+                    var sum = total + previous[i];
+                    if (((total ^ sum) & (previous[i] ^ sum)) < 0) {
+                        big = BigInteger.valueOf(total).add(BigInteger.valueOf(previous[i]));
+                    } else {
+                        total = sum;
+                    }
+                } else {
+                    big = (big == null ? BigInteger.valueOf(total) : big).add(value(bigPrevious[i], previous[i]));
+                }
+            }
+            totals[g] = total;
+            bigTotals[g] = big;
+        }
+
+        var op = net.op;
+        var group = net.group;
+        var definitions = net.definitions;
+        for (var i = 0; i < op.length; i++) {
+            var g = group[i];
+            if (frozen != null && frozen.get(g)) {
+                continue;
+            }
+            var k = net.countLinked(g);
+            if (bigTotals[g] == null) {
+                long number;
+                try {
+                    number = Kernel.tick(op[i], totals[g], k, definitions[i], env);
+                } catch (ArithmeticException ex) {
+                    // synthetic overflow, no I/O done yet
+                    send(g, Kernel.tick(op[i], BigInteger.valueOf(totals[g]), k, definitions[i], env));
+                    continue;
+                }
+                if (number > 0) {
+                    send(g, number);
+                }
+            } else {
+                send(g, Kernel.tick(op[i], bigTotals[g], k, definitions[i], env));
+            }
+        }
+
+        for (var i : net.posTicks) {
+            var g = group[i];
+            var big = bigTotals[g];
+            Kernel.posTick(op[i], big == null ? totals[g] : Long.MAX_VALUE, env, net.single(i));
+        }
+
+        return Arrays.equals(drones, previous) && (promoted + promotedPrevious == 0 || Arrays.equals(bigDrones, bigPrevious));
+    }
+
+    /** Sends a number of drones to all stations linked by group {@code g}. */
+    private void send(int g, BigInteger number) {
+        if (number.signum() > 0) {
+            if (number.bitLength() < Long.SIZE) {
+                send(g, number.longValue());
+            } else {
+                for (var l = net.links[g]; l < net.links[g+1]; l++) {
+                    add(net.targets[l], number.multiply(BigInteger.valueOf(net.weights[l])));
+                }
+            }
+        }
+    }
+
+    /** Sends a positive number of drones to all stations linked by group {@code g}. */
+    private void send(int g, long number) {
+        var links = net.links;
+        var targets = net.targets;
+        var weights = net.weights;
+        for (var l = links[g]; l < links[g+1]; l++) {
+            var t = targets[l];
+            var weight = weights[l];
+            if (weight != 1 && number > Long.MAX_VALUE / weight) {
+                add(t, BigInteger.valueOf(number).multiply(BigInteger.valueOf(weight)));
+            } else if (bigDrones[t] == null) {
+                var sum = drones[t] + number * weight;
+                if (sum < 0) {
+                    promoted += 1;
+                    bigDrones[t] = BigInteger.valueOf(drones[t]).add(BigInteger.valueOf(number * weight));
+                    drones[t] = 0;
+                } else {
+                    drones[t] = sum;
+                }
+            } else {
+                bigDrones[t] = bigDrones[t].add(BigInteger.valueOf(number * weight));
+            }
+        }
+    }
+
+    /** Adds a number of drones, sent in this tick, to station {@code t}. */
+    protected void deliver(int t, BigInteger number) {
+        if (number.signum() > 0) {
+            if (bigDrones[t] == null && number.bitLength() < Long.SIZE && drones[t] + number.longValue() >= 0) {
+                drones[t] += number.longValue();
+            } else {
+                add(t, number);
+            }
+        }
+    }
+
+    /** Adds a number of drones, beyond the {@code long} range, to station {@code t}. */
+    private void add(int t, BigInteger number) {
+        if (bigDrones[t] == null) {
+            promoted += 1;
+            bigDrones[t] = number.add(BigInteger.valueOf(drones[t]));
+            drones[t] = 0;
+        } else {
+            bigDrones[t] = bigDrones[t].add(number);
+        }
+    }
+
+    /** Sets the exact number of drones of a station, now and before the last tick. */
+    protected void load(int index, BigInteger number, BigInteger before) {
+        if (number.bitLength() < Long.SIZE) {
+            drones[index] = number.longValue();
+            bigDrones[index] = null;
+        } else {
+            drones[index] = 0;
+            bigDrones[index] = number;
+            promoted += 1;
+        }
+        if (before.bitLength() < Long.SIZE) {
+            previous[index] = before.longValue();
+            bigPrevious[index] = null;
+        } else {
+            previous[index] = 0;
+            bigPrevious[index] = before;
+            promotedPrevious += 1;
+        }
+    }
+
+    private static BigInteger value(BigInteger big, long value) {
+        return big != null ? big : BigInteger.valueOf(value);
+    }
+
+    private static int saturated(BigInteger big, long value) {
+        return big != null ? Integer.MAX_VALUE : (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drones(int index) {
+        return saturated(bigDrones[index], drones[index]);
+    }
+
+    @Override
+    public int previous(int index) {
+        return saturated(bigPrevious[index], previous[index]);
+    }
+
+    @Override
+    public BigInteger value(int index) {
+        return value(bigDrones[index], drones[index]);
+    }
+}
@@ -2,10 +2,16 @@ package cfh.zirconium.expr;
 
 import static cfh.zirconium.Compiler.*;
 
+import java.math.BigInteger;
 import java.nio.BufferUnderflowException;
 import java.nio.CharBuffer;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntBinaryOperator;
 
+import cfh.zirconium.Settings;
 import cfh.zirconium.expr.Expr.*;
 import cfh.zirconium.net.Pos;
 
@@ -24,6 +30,13 @@ public class Definition {
     private static final String SP = " \t";
     private static final String OP = "+-*/=";
     
+    private static final Settings settings = Settings.instance();
+    
+    /** Evaluators of all compiled expressions, shared by equal (specialized) expressions. */
+    private static final Map<String, IntBinaryOperator> compiled = new ConcurrentHashMap<>();
+    /** Number of expressions compiled or being compiled, reserved before compiling. */
+    private static final AtomicInteger compiledCount = new AtomicInteger();
+    
     /** Parse given text for a Definition. */
     public static Definition parse(Pos pos, String text) throws CompileException {
         assert !text.isBlank() : "empty expression";
@@ -44,11 +57,16 @@ public class Definition {
             skipSpaces(buf);
 
             var stack = new LinkedList<Expr>();
+            var postfix = new Postfix.Builder();
             while (buf.hasRemaining()) {
                 var ch = buf.get();
-                if (ch == 'N') stack.push(new N());
-                else if (ch == 'K') stack.push(new K());
-                else if (Character.isDigit(ch)) {
+                if (ch == 'N') {
+                    stack.push(new N());
+                    postfix.n();
+                } else if (ch == 'K') {
+                    stack.push(new K());
+                    postfix.k();
+                } else if (Character.isDigit(ch)) {
                     var str = Character.toString(ch);
                     while (buf.hasRemaining()) {
                         buf.mark();
@@ -60,7 +78,9 @@ public class Definition {
                             break;
                         }
                     }
-                    stack.push(new Literal(Integer.parseInt(str)));
+                    var value = Integer.parseInt(str);
+                    stack.push(new Literal(value));
+                    postfix.literal(value);
                 } else if (OP.indexOf(ch) != -1) {
                     if (stack.size() < 2) {
                         throw new CompileException(new Pos(pos.x()+buf.position()-1, pos.y()), "not enough arguments");
@@ -68,6 +88,7 @@ public class Definition {
                     var arg2 = stack.pop();
                     var arg1 = stack.pop();
                     stack.push(new Operation(arg1, arg2, ch));
+                    postfix.operation(ch);
                 } else {
                     throw new CompileException(new Pos(pos.x()+buf.position()-1, pos.y()), "unrecognized character: " + ch);
                 }
@@ -82,7 +103,7 @@ public class Definition {
                 throw new CompileException(new Pos(pos.x()+buf.position()-1, pos.y()), "too many arguments/missing operator");
             }
             
-            return new Definition(symbol, expr);
+            return new Definition(symbol, expr, postfix.build());
         } catch (BufferUnderflowException ex) {
             throw new CompileException(new Pos(pos.x()+buf.position()-1, pos.y()), "incomplete definition");
         }
@@ -104,11 +125,54 @@ public class Definition {
     
     public final char symbol;
     public final Expr expr;
+    /** Expression as postfix program. */
+    private final Postfix postfix;
+    /** Expression evaluated by {@link #calculate(int, int)}. */
+    private final Expr evaluated;
+    /** Compiled expression, the postfix program if it could not be compiled; {@code null} until first used. */
+    private volatile IntBinaryOperator evaluator = null;
     
     /** Constructor. */
-    private Definition(char symbol, Expr expr) {
+    private Definition(char symbol, Expr expr, Postfix postfix) {
+        this(symbol, expr, postfix, expr);
+    }
+    
+    /** Constructor for a definition evaluated as given (specialized) expression. */
+    private Definition(char symbol, Expr expr, Postfix postfix, Expr evaluated) {
         this.symbol = symbol;
         this.expr = expr;
+        this.postfix = postfix;
+        this.evaluated = evaluated;
+    }
+    
+    /**
+     * Evaluator for given expression, compiled only once for equal expressions.
+     * Once the {@linkplain Settings#compiledExpressions limit} is reached, or if classes can not
+     * be defined, the postfix program is used.
+     */
+    private static IntBinaryOperator compile(Expr expr, Postfix postfix) {
+        var evaluator = compiled.computeIfAbsent(expr.toString(), key -> {
+            if (compiledCount.incrementAndGet() > settings.compiledExpressions()) {
+                compiledCount.decrementAndGet();
+                return null;
+            }
+            var result = Generator.compile(expr);
+            if (result == null) {
+                compiledCount.decrementAndGet();
+            }
+            return result;
+        });
+        return evaluator != null ? evaluator : postfix;
+    }
+    
+    /**
+     * This definition specialized for stations with given number of links:
+     * {@link #calculate(int, int)} evaluates the expression with K substituted and constants folded,
+     * only valid for that K. The other calculations are not changed.
+     */
+    public Definition specialize(int k) {
+        var specialized = expr.specialize(k);
+        return new Definition(symbol, expr, Postfix.of(specialized), specialized);
     }
     
     @Override
@@ -128,8 +192,41 @@ public class Definition {
         return symbol + ":" + expr;
     }
 
-    /** Execute the expression. */
+    /** Execute the expression; not thread-safe if executed as postfix program. */
     public int calculate(int n, int k) {
+        return evaluator().applyAsInt(n, k);
+    }
+    
+    /** Evaluator used by {@link #calculate(int, int)}, compiled on first use. */
+    IntBinaryOperator evaluator() {
+        var result = evaluator;
+        if (result == null) {
+            result = compile(evaluated, postfix);
+            evaluator = result;
+        }
+        return result;
+    }
+    
+    /** Number of expressions compiled. */
+    static int compiledCount() {
+        return compiledCount.get();
+    }
+    
+    /** Postfix program of the (specialized) expression. */
+    Postfix postfix() {
+        return postfix;
+    }
+
+    /** 
+     * Execute the expression without overflow.
+     * @throws ArithmeticException if the result does not fit in a {@code long}
+     */
+    public long calculate(long n, long k) {
+        return expr.calculate(n, k);
+    }
+
+    /** Execute the expression with arbitrary precision. */
+    public BigInteger calculate(BigInteger n, BigInteger k) {
         return expr.calculate(n, k);
     }
 }
@@ -0,0 +1,17 @@
+package cfh.zirconium.expr;
+
+/** Receives an expression in postfix order, see {@link Expr#emit}. */
+interface Emitter {
+
+    /** Loads {@code N}. */
+    void n();
+
+    /** Loads {@code K}. */
+    void k();
+
+    /** Loads a literal. */
+    void literal(int value);
+
+    /** Applies an operation to the two topmost values. */
+    void operation(char op);
+}
@@ -2,12 +2,32 @@ package cfh.zirconium.expr;
 
 import static java.util.Objects.*;
 
+import java.math.BigInteger;
+
 /** {@code expr := value | expr sp* expr sp* operator} */
 sealed abstract class Expr {
 
     /** Executes this expression using given values for N and K. */
     abstract int calculate(int n, int k);
 
+    /** 
+     * Executes this expression using given values for N and K.
+     * @throws ArithmeticException if the result overflows
+     */
+    abstract long calculate(long n, long k);
+
+    /** Executes this expression using given values for N and K. */
+    abstract BigInteger calculate(BigInteger n, BigInteger k);
+
+    /** Emits the code of this expression, leaving its value on the stack. */
+    abstract void emit(Emitter code);
+
+    /**
+     * Specializes this expression for a given K: substitutes K and folds constants,
+     * same result as this expression for that K (without overflow detection).
+     */
+    abstract Expr specialize(int k);
+
     //==============================================================================================
     
     /** {@code value := "N" | "K" | integer} */
@@ -24,6 +44,22 @@ sealed abstract class Expr {
             return n;
         }
         @Override
+        long calculate(long n, long k) {
+            return n;
+        }
+        @Override
+        BigInteger calculate(BigInteger n, BigInteger k) {
+            return n;
+        }
+        @Override
+        void emit(Emitter code) {
+            code.n();
+        }
+        @Override
+        Expr specialize(int k) {
+            return this;
+        }
+        @Override
         public String toString() {
             return "N";
         }
@@ -36,6 +72,22 @@ sealed abstract class Expr {
             return k;
         }
         @Override
+        long calculate(long n, long k) {
+            return k;
+        }
+        @Override
+        BigInteger calculate(BigInteger n, BigInteger k) {
+            return k;
+        }
+        @Override
+        void emit(Emitter code) {
+            code.k();
+        }
+        @Override
+        Expr specialize(int k) {
+            return new Literal(k);
+        }
+        @Override
         public String toString() {
             return "K";
         }
@@ -44,14 +96,35 @@ sealed abstract class Expr {
     /** Literal integer */
     static final class Literal extends Value {
         private final int value;
+        private final BigInteger big;
         public Literal(int value) {
             this.value = value;
+            this.big = BigInteger.valueOf(value);
         }
         @Override
         int calculate(int n, int k) {
             return value;
         }
         @Override
+        long calculate(long n, long k) {
+            return value;
+        }
+        @Override
+        BigInteger calculate(BigInteger n, BigInteger k) {
+            return big;
+        }
+        @Override
+        void emit(Emitter code) {
+            code.literal(value);
+        }
+        @Override
+        Expr specialize(int k) {
+            return this;
+        }
+        boolean is(int number) {
+            return value == number;
+        }
+        @Override
         public String toString() {
             return Integer.toString(value);
         }
@@ -87,9 +160,163 @@ sealed abstract class Expr {
             };
         }
         @Override
+        long calculate(long n, long k) {
+            var val1 = arg1.calculate(n, k);
+            var val2 = arg2.calculate(n, k);
+            return switch (op) {
+                case '+' -> Math.addExact(val1, val2);
+                case '-' -> Math.subtractExact(val1, val2);
+                case '*' -> Math.multiplyExact(val1, val2);
+                case '/' -> val2==0 ? 0 : val2==-1 ? Math.negateExact(val1) : val1 / val2;
+                case '=' -> val1==val2 ? 1 : 0;
+                default -> throw new IllegalArgumentException("invalid operation '" + op + "'");
+            };
+        }
+        @Override
+        BigInteger calculate(BigInteger n, BigInteger k) {
+            var val1 = arg1.calculate(n, k);
+            var val2 = arg2.calculate(n, k);
+            return switch (op) {
+                case '+' -> val1.add(val2);
+                case '-' -> val1.subtract(val2);
+                case '*' -> val1.multiply(val2);
+                case '/' -> val2.signum()==0 ? BigInteger.ZERO : val1.divide(val2);
+                case '=' -> val1.equals(val2) ? BigInteger.ONE : BigInteger.ZERO;
+                default -> throw new IllegalArgumentException("invalid operation '" + op + "'");
+            };
+        }
+        @Override
+        void emit(Emitter code) {
+            arg1.emit(code);
+            arg2.emit(code);
+            code.operation(op);
+        }
+        @Override
+        Expr specialize(int k) {
+            return fold(arg1.specialize(k), arg2.specialize(k), op);
+        }
+        /** Folds constants and identities, or creates the operation. */
+        private static Expr fold(Expr arg1, Expr arg2, char op) {
+            if (arg1 instanceof Literal && arg2 instanceof Literal) {
+                return new Literal(new Operation(arg1, arg2, op).calculate(0, 0));
+            }
+            var zero1 = arg1 instanceof Literal lit && lit.is(0);
+            var zero2 = arg2 instanceof Literal lit && lit.is(0);
+            var one1 = arg1 instanceof Literal lit && lit.is(1);
+            var one2 = arg2 instanceof Literal lit && lit.is(1);
+            var same = arg1.toString().equals(arg2.toString());
+            switch (op) {
+                case '+' -> {
+                    if (zero1) return arg2;
+                    if (zero2) return arg1;
+                }
+                case '-' -> {
+                    if (zero2) return arg1;
+                    if (same) return new Literal(0);
+                    if (arg1 instanceof Literal lit && arg2 instanceof Select sel && lit.is(sel.value)) return sel.not();
+                }
+                case '*' -> {
+                    if (zero1 || zero2) return new Literal(0);
+                    if (one1) return arg2;
+                    if (one2) return arg1;
+                    if (arg1 instanceof Select sel && arg2 instanceof Literal lit) return sel.times(lit.value);
+                    if (arg1 instanceof Literal lit && arg2 instanceof Select sel) return sel.times(lit.value);
+                }
+                case '/' -> {
+                    if (zero1 || zero2) return new Literal(0);
+                    if (one2) return arg1;
+                    if (arg1 instanceof N && arg2 instanceof N) return Select.of(0, false, 1);
+                    if (arg1 instanceof Select sel && arg2 instanceof Literal lit) return sel.divide(lit.value);
+                }
+                case '=' -> {
+                    if (same) return new Literal(1);
+                    if (arg1 instanceof N && arg2 instanceof Literal lit) return Select.of(lit.value, true, 1);
+                    if (arg1 instanceof Literal lit && arg2 instanceof N) return Select.of(lit.value, true, 1);
+                    if (arg1 instanceof Select sel && arg2 instanceof Literal lit) return sel.equal(lit.value);
+                    if (arg1 instanceof Literal lit && arg2 instanceof Select sel) return sel.equal(lit.value);
+                }
+                default -> throw new IllegalArgumentException("invalid operation '" + op + "'");
+            }
+            return new Operation(arg1, arg2, op);
+        }
+        @Override
         public String toString() {
             return arg1 + " " + arg2 + " " + op;
 //            return "(" + arg1 + op + arg2 + ")";
         }
     }
+
+    //==============================================================================================
+    
+    /** 
+     * Constant if N is (not) equal to a number, else zero; only created by {@link #specialize}.
+     * Written as {@code N test = value *} or {@code 1 N test = - value *}.
+     */
+    static final class Select extends Expr {
+        /** Selects given constant depending on N, zero for a constant zero. */
+        static Expr of(int test, boolean equal, int value) {
+            return value == 0 ? new Literal(0) : new Select(test, equal, value);
+        }
+        private final int test;
+        private final boolean equal;
+        private final int value;
+        private Select(int test, boolean equal, int value) {
+            this.test = test;
+            this.equal = equal;
+            this.value = value;
+        }
+        /** Value minus this. */
+        Expr not() {
+            return of(test, !equal, value);
+        }
+        Expr times(int factor) {
+            return of(test, equal, value * factor);
+        }
+        Expr divide(int divisor) {
+            return of(test, equal, divisor == 0 ? 0 : value / divisor);
+        }
+        /** This compared to a number. */
+        Expr equal(int number) {
+            if (number == 0) {
+                return of(test, !equal, 1);
+            }
+            return number == value ? of(test, equal, 1) : new Literal(0);
+        }
+        @Override
+        int calculate(int n, int k) {
+            return (n == test) == equal ? value : 0;
+        }
+        @Override
+        long calculate(long n, long k) {
+            return (n == test) == equal ? value : 0;
+        }
+        @Override
+        BigInteger calculate(BigInteger n, BigInteger k) {
+            return n.equals(BigInteger.valueOf(test)) == equal ? BigInteger.valueOf(value) : BigInteger.ZERO;
+        }
+        @Override
+        void emit(Emitter code) {
+            if (!equal) {
+                code.literal(1);
+            }
+            code.n();
+            code.literal(test);
+            code.operation('=');
+            if (!equal) {
+                code.operation('-');
+            }
+            if (value != 1) {
+                code.literal(value);
+                code.operation('*');
+            }
+        }
+        @Override
+        Expr specialize(int k) {
+            return this;
+        }
+        @Override
+        public String toString() {
+            return (equal ? "" : "1 ") + "N " + test + " =" + (equal ? "" : " -") + (value == 1 ? "" : " " + value + " *");
+        }
+    }
 }
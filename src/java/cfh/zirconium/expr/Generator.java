@@ -0,0 +1,251 @@
+package cfh.zirconium.expr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Compiles an expression to a hidden class implementing {@code (n, k) -> int}.
+ * The generated method only loads the arguments and literals and uses the integer instructions,
+ * division and comparison are static calls to {@link #divide} and {@link #equal},
+ * so the code has no branches (and needs no stack map frames).
+ */
+final class Generator implements Emitter {
+
+    /** Compiles given expression, {@code null} if hidden classes are not available. */
+    static IntBinaryOperator compile(Expr expr) {
+        var generator = new Generator();
+        expr.emit(generator);
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(generator.classFile(), true);
+            var constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            return (IntBinaryOperator) constructor.invoke();
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+
+    /** Division as used by the expressions: zero if dividing by zero. */
+    static int divide(int val1, int val2) {
+        return val2==0 ? 0 : val1 / val2;
+    }
+
+    /** Comparison as used by the expressions: one if equal, else zero. */
+    static int equal(int val1, int val2) {
+        return val1==val2 ? 1 : 0;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    private static final String NAME = Generator.class.getPackageName().replace('.', '/') + "/Compiled";
+    private static final String OPERATOR = IntBinaryOperator.class.getName().replace('.', '/');
+    private static final String SELF = Generator.class.getName().replace('.', '/');
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int METHOD_REF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD_1 = 0x1B;
+    private static final int ILOAD_2 = 0x1C;
+    private static final int ALOAD_0 = 0x2A;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IRETURN = 0xAC;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int INVOKESTATIC = 0xB8;
+
+    /** Constant pool, entries are indexed from 1. */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolData = new DataOutputStream(pool);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int count = 1;
+
+    /** Code of the {@code applyAsInt} method. */
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final DataOutputStream codeData = new DataOutputStream(code);
+    private int depth = 0;
+    private int maxDepth = 0;
+
+    private Generator() {
+        //
+    }
+
+    @Override
+    public void n() {
+        instruction(ILOAD_1, 1);
+    }
+
+    @Override
+    public void k() {
+        instruction(ILOAD_2, 1);
+    }
+
+    @Override
+    public void literal(int value) {
+        try {
+            if (0 <= value && value <= 5) {
+                instruction(ICONST_0 + value, 1);
+            } else if (Byte.MIN_VALUE <= value && value <= Byte.MAX_VALUE) {
+                instruction(BIPUSH, 1);
+                codeData.writeByte(value);
+            } else if (Short.MIN_VALUE <= value && value <= Short.MAX_VALUE) {
+                instruction(SIPUSH, 1);
+                codeData.writeShort(value);
+            } else {
+                var index = constant("I" + value, INTEGER, out -> out.writeInt(value));
+                instruction(LDC_W, 1);
+                codeData.writeShort(index);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void operation(char op) {
+        switch (op) {
+            case '+' -> instruction(IADD, -1);
+            case '-' -> instruction(ISUB, -1);
+            case '*' -> instruction(IMUL, -1);
+            case '/' -> invoke("divide");
+            case '=' -> invoke("equal");
+            default -> throw new IllegalArgumentException("invalid operation '" + op + "'");
+        }
+    }
+
+    private void invoke(String method) {
+        var ref = methodRef(SELF, method, "(II)I");
+        instruction(INVOKESTATIC, -1);
+        try {
+            codeData.writeShort(ref);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void instruction(int opcode, int stack) {
+        code.write(opcode);
+        depth += stack;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /** Class file of the hidden class. */
+    private byte[] classFile() throws IOException {
+        assert depth == 1 : "stack depth " + depth;
+        var thisClass = classRef(NAME);
+        var superClass = classRef("java/lang/Object");
+        var operator = classRef(OPERATOR);
+        var init = utf8("<init>");
+        var initType = utf8("()V");
+        var objectInit = methodRef("java/lang/Object", "<init>", "()V");
+        var apply = utf8("applyAsInt");
+        var applyType = utf8("(II)I");
+        var codeName = utf8("Code");
+
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(61);
+        out.writeShort(count);
+        pool.writeTo(out);
+        out.writeShort(0x0031);         // public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(operator);
+        out.writeShort(0);              // fields
+        out.writeShort(2);              // methods
+
+        out.writeShort(0x0001);         // public <init>()
+        out.writeShort(init);
+        out.writeShort(initType);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + 5);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeInt(5);
+        out.writeByte(ALOAD_0);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(objectInit);
+        out.writeByte(RETURN);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        code.write(IRETURN);
+        out.writeShort(0x0001);         // public int applyAsInt(int, int)
+        out.writeShort(apply);
+        out.writeShort(applyType);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.size());
+        out.writeShort(maxDepth);
+        out.writeShort(3);
+        out.writeInt(code.size());
+        code.writeTo(out);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        out.writeShort(0);              // attributes
+        return bytes.toByteArray();
+    }
+
+    private int utf8(String text) {
+        return constant("U" + text, UTF8, out -> out.writeUTF(text));
+    }
+
+    private int classRef(String name) {
+        var index = utf8(name);
+        return constant("C" + name, CLASS, out -> out.writeShort(index));
+    }
+
+    private int methodRef(String owner, String name, String type) {
+        var ownerIndex = classRef(owner);
+        var nameIndex = utf8(name);
+        var typeIndex = utf8(type);
+        var nameAndType = constant("T" + name + type, NAME_AND_TYPE, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(typeIndex);
+        });
+        return constant("M" + owner + "." + name + type, METHOD_REF, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    /** Index of a constant, adding it to the pool if not already there. */
+    private int constant(String key, int tag, Entry entry) {
+        var index = constants.get(key);
+        if (index == null) {
+            try {
+                poolData.writeByte(tag);
+                entry.write(poolData);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            index = count++;
+            constants.put(key, index);
+        }
+        return index;
+    }
+
+    @FunctionalInterface
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,181 @@
+package cfh.zirconium.expr;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Expression lowered to a flat postfix program, executed on a preallocated operand stack
+ * without recursion or virtual calls. Used if expressions can not (or should not) be compiled to classes.
+ * The top of the stack is kept in a local variable, operations take their second argument from the stack,
+ * or directly from N, K or a literal.
+ * <p>
+ * Not thread-safe: the stack is shared by all evaluations, each definition has its own instance.
+ */
+final class Postfix implements IntBinaryOperator {
+
+    static final int N = 0;
+    static final int K = 1;
+    /** Followed by the value. */
+    static final int LITERAL = 2;
+    /** Operations, each in four forms: second argument from the stack, N, K, or literal (followed by the value). */
+    static final int ADD = 4;
+    static final int SUB = 8;
+    static final int MUL = 12;
+    static final int DIV = 16;
+    static final int EQ = 20;
+    private static final int WITH_N = 1;
+    private static final int WITH_K = 2;
+    private static final int WITH_LITERAL = 3;
+
+    /** Lowers given expression. */
+    static Postfix of(Expr expr) {
+        var builder = new Builder();
+        expr.emit(builder);
+        return builder.build();
+    }
+
+    private final int[] code;
+    private final int[] stack;
+
+    private Postfix(int[] code, int depth) {
+        this.code = code;
+        this.stack = new int[depth];
+    }
+
+    /** A new instance with the same program and its own stack. */
+    Postfix copy() {
+        return new Postfix(code, stack.length);
+    }
+
+    /** The program. */
+    int[] code() {
+        return code.clone();
+    }
+
+    @Override
+    public int applyAsInt(int n, int k) {
+        var code = this.code;
+        var stack = this.stack;
+        var sp = 0;
+        var top = 0;
+        var pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case N -> { stack[sp++] = top; top = n; }
+                case K -> { stack[sp++] = top; top = k; }
+                case LITERAL -> { stack[sp++] = top; top = code[pc++]; }
+                case ADD -> top = stack[--sp] + top;
+                case ADD+WITH_N -> top += n;
+                case ADD+WITH_K -> top += k;
+                case ADD+WITH_LITERAL -> top += code[pc++];
+                case SUB -> top = stack[--sp] - top;
+                case SUB+WITH_N -> top -= n;
+                case SUB+WITH_K -> top -= k;
+                case SUB+WITH_LITERAL -> top -= code[pc++];
+                case MUL -> top = stack[--sp] * top;
+                case MUL+WITH_N -> top *= n;
+                case MUL+WITH_K -> top *= k;
+                case MUL+WITH_LITERAL -> top *= code[pc++];
+                case DIV -> top = divide(stack[--sp], top);
+                case DIV+WITH_N -> top = divide(top, n);
+                case DIV+WITH_K -> top = divide(top, k);
+                case DIV+WITH_LITERAL -> top = divide(top, code[pc++]);
+                case EQ -> top = stack[--sp]==top ? 1 : 0;
+                case EQ+WITH_N -> top = top==n ? 1 : 0;
+                case EQ+WITH_K -> top = top==k ? 1 : 0;
+                case EQ+WITH_LITERAL -> top = top==code[pc++] ? 1 : 0;
+                default -> throw new IllegalStateException("invalid code " + code[pc-1] + " at " + (pc-1));
+            }
+        }
+        return top;
+    }
+
+    private static int divide(int val1, int val2) {
+        return val2==0 ? 0 : val1 / val2;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(code);
+    }
+
+    //==============================================================================================
+
+    /**
+     * Creates the program, instructions must be added in postfix order.
+     * An operation directly following a load of its second argument is fused with it.
+     */
+    static final class Builder implements Emitter {
+
+        private int[] code = new int[16];
+        private int size = 0;
+        /** Position of the last instruction if it is a load, else -1. */
+        private int load = -1;
+        private int depth = 0;
+        private int maxDepth = 0;
+
+        @Override
+        public void n() {
+            push(N);
+        }
+
+        @Override
+        public void k() {
+            push(K);
+        }
+
+        @Override
+        public void literal(int value) {
+            push(LITERAL);
+            add(value);
+        }
+
+        @Override
+        public void operation(char op) {
+            var code = switch (op) {
+                case '+' -> ADD;
+                case '-' -> SUB;
+                case '*' -> MUL;
+                case '/' -> DIV;
+                case '=' -> EQ;
+                default -> throw new IllegalArgumentException("invalid operation '" + op + "'");
+            };
+            if (load != -1) {
+                var value = size > load+1 ? this.code[load+1] : 0;
+                var argument = this.code[load];
+                size = load;
+                add(code + switch (argument) {
+                    case N -> WITH_N;
+                    case K -> WITH_K;
+                    default -> WITH_LITERAL;
+                });
+                if (argument == LITERAL) {
+                    add(value);
+                }
+            } else {
+                add(code);
+            }
+            load = -1;
+            depth -= 1;
+        }
+
+        private void push(int instruction) {
+            load = size;
+            add(instruction);
+            depth += 1;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private void add(int value) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, 2*size);
+            }
+            code[size++] = value;
+        }
+
+        Postfix build() {
+            assert depth == 1 : "stack depth " + depth;
+            return new Postfix(Arrays.copyOf(code, size), maxDepth);
+        }
+    }
+}
@@ -87,6 +87,8 @@ public class IDE {
     // TODO save window position, split location
     
     private static final List<String> STATUS = new ArrayList<>(Arrays.asList("-/|\\".split("")));
+    /** Maximal number of ticks executed between status updates while running. */
+    private static final long RUN_CHUNK = 1000;
     
     //----------------------------------------------------------------------------------------------
     
@@ -622,8 +624,14 @@ public class IDE {
         new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
-                while (running && !environment.halted() && program != null) {
-                   if (program.step()) {
+                var current = program;
+                // only stopping on quiescence if asked, else a quiescent map would return after each tick
+                var until = stopNoChange
+                    ? Program.Until.HALT.quiescent().when(p -> !running || program != current)
+                    : Program.Until.HALT.when(p -> !running || program != current);
+                while (running && !environment.halted() && program == current) {
+                   var result = current.run(RUN_CHUNK, until);
+                   if (result.reason() == Program.Stop.QUIESCENT) {
                        if (running) {
                            stepButton.setForeground(Color.ORANGE.darker());
                        }
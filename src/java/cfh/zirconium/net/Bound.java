@@ -5,8 +5,11 @@ import static java.util.Objects.*;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Stream;
 
 import cfh.zirconium.Environment;
@@ -15,14 +18,22 @@ import cfh.zirconium.Environment;
 public final class Bound extends Station {
 
     private final String id;
+    /** Child stations, in row-major order. */
     private final Set<Single> childs;
+    /** All stations linked by childs, set by {@link #fix}. */
+    private List<Single> linked = null;
+    
+    private boolean ticking = false;
+    /** Sum of drones of all childs, computed once per tick. */
+    private int total = 0;
     
     /** Creates a bound station with given child stations. 
      * @param id TODO*/
     public Bound(String id, Environment env, Single... childs) {
         super(env);
         this.id = requireNonNull(id);
-        this.childs = new HashSet<>(Arrays.asList(childs));
+        this.childs = new TreeSet<>(Comparator.comparing(Single::pos));
+        this.childs.addAll(Arrays.asList(childs));
         this.childs.forEach(s -> s.parent(this));
     }
     
@@ -43,18 +54,40 @@ public final class Bound extends Station {
 
     /** Adds a bounded station to this bound station. */
     public void addChild(Single station) {
+        if (linked != null) {
+            throw new IllegalStateException("binding to fixed station " + this);
+        }
         childs.add(station);
         station.parent(this);
     }
     
+    @Override
+    public void fix() {
+        linked = childs.stream().map(Single::linked).flatMap(Collection::stream).toList();
+        // a station linked by several childs is dispatched to once, weighted by the number of links
+        var weights = new LinkedHashMap<Single, Integer>();
+        linked.forEach(s -> weights.merge(s, 1, Integer::sum));
+        var targets = weights.keySet().toArray(Single[]::new);
+        var counts = weights.values().stream().mapToInt(Integer::intValue).toArray();
+        childs.forEach(s -> s.targets(targets, counts));
+    }
+    
     @Override
     public void reset() {
         childs.forEach(Single::reset);
+        ticking = false;
+        total = 0;
     }
 
     @Override
     public void preTick() {
-        childs.forEach(Single::preTick);
+        var sum = 0;
+        for (var child : childs) {
+            child.preTick();
+            sum += child.drones();
+        }
+        total = sum;
+        ticking = true;
     }
 
     @Override
@@ -63,18 +96,24 @@ public final class Bound extends Station {
     }
     
     @Override
-    public void posTick() {
-        childs.forEach(Single::posTick);
+    public int posTick() {
+        var changed = 0;
+        for (var child : childs) {
+            changed += child.posTick();
+        }
+        ticking = false;
+        return changed;
     }
 
+    /** Total number of drones, cached while ticking. */
     @Override
     public int drones() {
-        return childs.stream().mapToInt(Single::drones).sum();
+        return ticking ? total : childs.stream().mapToInt(Single::drones).sum();
     }
 
     @Override
     protected Collection<Single> linked() {
-        return childs.stream().map(Single::linked).flatMap(Collection::stream).toList();
+        return linked != null ? linked : childs.stream().map(Single::linked).flatMap(Collection::stream).toList();
     }
     
     @Override
@@ -0,0 +1,115 @@
+package cfh.zirconium.net;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Execution order of the stations: reverse Cuthill-McKee over the (undirected) link graph,
+ * so stations exchanging drones get near indices in the array based state.
+ * Stations are first sorted by position (row-major), which decides ties and the order of
+ * stations without links, so the order only depends on the map.
+ */
+public final class Ordering {
+
+    /** Orders given stations, each station only once. */
+    public static List<Station> of(Collection<Station> stations) {
+        var positions = new HashMap<Station, Pos>();
+        stations.forEach(s -> positions.computeIfAbsent(s, Ordering::pos));
+        var nodes = positions.keySet().stream().sorted(Comparator.comparing(positions::get)).toList();
+        var size = nodes.size();
+        var index = new HashMap<Single, Integer>();
+        for (var n = 0; n < size; n++) {
+            var node = n;
+            nodes.get(n).stations().forEach(s -> index.put(s, node));
+        }
+        var neighbours = neighbours(nodes, index);
+
+        var order = new int[size];
+        var count = 0;
+        var visited = new boolean[size];
+        var starts = new Integer[size];
+        for (var n = 0; n < size; n++) {
+            starts[n] = n;
+        }
+        // each component starts at a station with fewest links, a peripheral one
+        Comparator<Integer> byDegree = Comparator.comparingInt(n -> neighbours[n].length);
+        Arrays.sort(starts, byDegree);
+        var queue = new ArrayDeque<Integer>();
+        for (var start : starts) {
+            if (visited[start]) {
+                continue;
+            }
+            visited[start] = true;
+            queue.add(start);
+            var first = count;
+            while (!queue.isEmpty()) {
+                var n = queue.remove();
+                order[count++] = n;
+                for (var m : neighbours[n]) {
+                    if (!visited[m]) {
+                        visited[m] = true;
+                        queue.add(m);
+                    }
+                }
+            }
+            // reversed per component, keeping unlinked stations in row-major order
+            for (int i = first, j = count-1; i < j; i++, j--) {
+                var tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+
+        var result = new ArrayList<Station>(size);
+        for (var n : order) {
+            result.add(nodes.get(n));
+        }
+        return result;
+    }
+
+    /** Position of a station, the first child for bound stations. */
+    private static Pos pos(Station station) {
+        return station.stations().map(Single::pos).min(Comparator.naturalOrder()).orElseThrow();
+    }
+
+    /** Linked and linking stations of each node, sorted by number of links, then position. */
+    private static int[][] neighbours(List<Station> nodes, Map<Single, Integer> index) {
+        var size = nodes.size();
+        var lists = new ArrayList<TreeSet<Integer>>(size);
+        for (var n = 0; n < size; n++) {
+            lists.add(new TreeSet<>());
+        }
+        for (var n = 0; n < size; n++) {
+            for (var single : nodes.get(n).linked()) {
+                var m = index.get(single);
+                if (m != null && m != n) {
+                    lists.get(n).add(m);
+                    lists.get(m).add(n);
+                }
+            }
+        }
+        var result = new int[size][];
+        for (var n = 0; n < size; n++) {
+            result[n] = lists.get(n).stream().mapToInt(Integer::intValue).toArray();
+        }
+        var degrees = Arrays.stream(result).mapToInt(a -> a.length).toArray();
+        for (var n = 0; n < size; n++) {
+            result[n] = Arrays.stream(result[n]).boxed()
+                .sorted(Comparator.comparingInt(m -> degrees[m]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        }
+        return result;
+    }
+
+    private Ordering() {
+        //
+    }
+}
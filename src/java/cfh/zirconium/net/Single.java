@@ -2,6 +2,7 @@ package cfh.zirconium.net;
 
 import static java.lang.Math.*;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -22,6 +23,12 @@ permits NopStation, CreateStation, DotStation, DupStation, DecStation, SplitStat
     
     private Bound parent;
     private final Set<Single> linked = new HashSet<>();
+    /** Stations drones are dispatched to, including links of bound siblings; set by {@link #fix}. */
+    private Single[] targets = null;
+    /** Number of links to each target, more than one if linked by several bound siblings. */
+    private int[] weights = null;
+    /** Number of linked stations (K), sum of the weights. */
+    private int count = 0;
     
     private int drones = 0;
     
@@ -41,6 +48,9 @@ permits NopStation, CreateStation, DotStation, DupStation, DecStation, SplitStat
     
     /** Links this station to given station (destination). */
     public void linkTo(Single station) {
+        if (targets != null) {
+            throw new IllegalStateException("linking fixed station " + this);
+        }
         if (!linked.add(station)) {
             System.err.printf("%s already linked to %s%n", this, station);
         }
@@ -90,6 +100,13 @@ permits NopStation, CreateStation, DotStation, DupStation, DecStation, SplitStat
     public int delta() {
         return ticking ? 0 : drones-previous;
     }
+
+    /** Sets the number of drones and of the last tick, used by engines keeping their own state. */
+    public final void load(int drones, int previous) {
+        assert !ticking : "loading while ticking " + this;
+        this.drones = drones;
+        this.previous = previous;
+    }
   
     @Override
     public boolean isNeighbour(Single station) {
@@ -104,26 +121,46 @@ permits NopStation, CreateStation, DotStation, DupStation, DecStation, SplitStat
         return Collections.unmodifiableCollection(linked);
     }
     
+    @Override
+    public void fix() {
+        if (parent == null) {
+            var stations = linked.toArray(new Single[linked.size()]);
+            var ones = new int[stations.length];
+            Arrays.fill(ones, 1);
+            targets(stations, ones);
+        }
+    }
+    
+    /** Sets the stations drones are dispatched to and the number of links to each, shared by bound siblings. */
+    void targets(Single[] stations, int[] weights) {
+        assert targets == null : "re-fixing " + this;
+        assert stations.length == weights.length;
+        targets = stations;
+        this.weights = weights;
+        count = Arrays.stream(weights).sum();
+    }
+    
+    /** Stations drones are dispatched to, see {@link #fix}. */
+    final Single[] targets() {
+        assert targets != null : "not fixed " + this;
+        return targets;
+    }
+    
     protected int countLinked() {
-        return parent==null ? linked.size() : parent.linked().size();
+        assert targets != null : "not fixed " + this;
+        return count;
     }
     
-    /** Sends a number of drones to each linked station. */
+    /** Sends a number of drones to each linked station, once per link. */
     protected final void send(int number) {
         assert ticking : "not ticking " + this;
         if (number < 0) {
             throw new IllegalArgumentException(this + ": negative drones: " + number);
         }
-        (parent==null ? this : parent).linked().forEach(s -> s.receive(number));
-    }
-    
-    /** Receive number of drones. */
-    final void receive(int number) {
-        if (number < 0) {
-            throw new IllegalArgumentException(this + ": negative drones: " + number);
+        var stations = targets();
+        for (var i = 0; i < stations.length; i++) {
+            stations[i].drones += number * weights[i];
         }
-//        (parent==null ? this : parent).stations().forEach(s -> s.drones += number);
-        drones += number;
     }
 
     @Override
@@ -149,11 +186,12 @@ permits NopStation, CreateStation, DotStation, DupStation, DecStation, SplitStat
     }
     
     @Override
-    public void posTick() {
+    public int posTick() {
         assert ticking : "not ticking " + this;
         posTick0();
         ticking = false;
 //        printer.print("%3d => %-3d %s%n", previous, drones, this);
+        return drones != previous ? 1 : 0;
     }
 
     /** {@link #reset} to be overriden by subclass. */
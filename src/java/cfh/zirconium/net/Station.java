@@ -35,6 +35,12 @@ permits Single, Bound {
     /** All linked stations, including childs of bound stations. */
     protected abstract Collection<Single> linked();
     
+    /** 
+     * Fixes the links after compilation, no more stations can be linked or bound.
+     * Precomputes the stations drones are dispatched to.
+     */
+    public abstract void fix();
+    
     /** Resets the station, including childs of bound station. */
     public abstract void reset();
 
@@ -44,6 +50,9 @@ permits Single, Bound {
     /** Tick process. */
     public abstract void tick();
     
-    /** Tick end, called after all stations have processed {@link #tick}. */
-    public abstract void posTick();
+    /** 
+     * Tick end, called after all stations have processed {@link #tick}.
+     * @return number of single stations whose number of drones was changed by this tick
+     */
+    public abstract int posTick();
 }
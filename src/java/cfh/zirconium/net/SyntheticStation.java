@@ -13,6 +13,8 @@ import cfh.zirconium.expr.Definition;
 public final class SyntheticStation extends Single {
 
     private final Definition definition;
+    /** Definition specialized for the number of linked stations, created on first use. */
+    private Definition specialized = null;
     
     public SyntheticStation(int x, int y, Environment env, Definition definition) {
         super(x, y, env);
@@ -24,11 +26,24 @@ public final class SyntheticStation extends Single {
         return "[" + definition.symbol + "]";
     }
 
+    /** Definition of this station. */
+    public Definition definition() {
+        return definition;
+    }
+
+    /** Definition specialized for the number of linked stations, only valid once fixed. */
+    public Definition specialized() {
+        if (specialized == null) {
+            specialized = definition.specialize(countLinked());
+        }
+        return specialized;
+    }
+
     @Override
     protected void tick0() {
         var k = countLinked();
         var n = total();
-        var drones = definition.calculate(n, k);
+        var drones = specialized().calculate(n, k);
         if (drones > 0) {
             send(drones);
         }
@@ -1,5 +1,6 @@
 package cfh.zirconium;
 
+import cfh.zirconium.engine.EngineTest;
 import cfh.zirconium.expr.DefinitionTest;
 import cfh.zirconium.net.StationTest;
 
@@ -8,9 +9,12 @@ public class ALL {
     public static void main(String[] args) {
         CompilerTest.main(null);
         ZoneDetectorTest.main(null);
+        ProgramTest.main(null);
         
         DefinitionTest.main(null);
         
         StationTest.main(null);
+        
+        EngineTest.main(null);
     }
 }
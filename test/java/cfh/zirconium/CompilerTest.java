@@ -1,5 +1,14 @@
 package cfh.zirconium;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
 import cfh.zirconium.Compiler.CompileException;
 import cfh.zirconium.Environment.*;
 
@@ -8,6 +17,7 @@ public class CompilerTest {
     public static void main(String[] args) {
         var test = new CompilerTest(args == null);
         test.validationTest();
+        test.streamTest();
     }
 
     private final boolean silent;
@@ -52,6 +62,9 @@ public class CompilerTest {
             O (
             ==========
             0 (TEST
+            ==========
+            0-  0
+            |   |
             """.split("\n *===+ *\n"))
         {
             errors += invalid(code);
@@ -64,6 +77,82 @@ public class CompilerTest {
         }
     }
     
+    /** Compiles the maps from files and channels, comparing with the compiled strings. */
+    private void streamTest() {
+        var errors = 0;
+        try (var files = Files.list(Path.of("test/maps"))) {
+            for (var file : files.filter(f -> f.toString().endsWith(".zc")).sorted().toList()) {
+                var code = Files.readString(file);
+                var header = Path.of(file + "h");
+                var definitions = Files.exists(header) ? Files.readString(header) : "";
+                var expected = graph(() -> compiler.compile("test", code, definitions));
+                if (!expected.equals(graph(() -> compiler.compile("test", file, definitions)))) {
+                    System.err.printf("file %s compiled differently%n", file);
+                    errors += 1;
+                }
+            }
+            var code = " =====\n[@>\u03BB>0] (bubble)\n =====\n((\u03BB = N 2 *)) (\uD83D\uDE00)\n";
+            var expected = graph(() -> compiler.compile("test", code, ""));
+            var bytes = new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8));
+            if (!expected.equals(graph(() -> compiler.compile("test", Channels.newChannel(bytes), "")))) {
+                System.err.printf("channel compiled differently: %s%n", code);
+                errors += 1;
+            }
+            // 63 newlines fill the line offsets exactly
+            for (var lines : new int[] { 62, 63, 64, 127 }) {
+                var many = "0->0\n".repeat(lines);
+                var reference = graph(() -> compiler.compile("test", many, ""));
+                var file = Files.createTempFile("zirconium", ".zc");
+                try {
+                    Files.writeString(file, many);
+                    if (!reference.equals(graph(() -> compiler.compile("test", file, "")))) {
+                        System.err.printf("file of %d lines compiled differently%n", lines);
+                        errors += 1;
+                    }
+                } finally {
+                    Files.delete(file);
+                }
+                var input = new ByteArrayInputStream(many.getBytes(StandardCharsets.UTF_8));
+                if (!reference.equals(graph(() -> compiler.compile("test", Channels.newChannel(input), "")))) {
+                    System.err.printf("channel of %d lines compiled differently%n", lines);
+                    errors += 1;
+                }
+            }
+            // malformed bytes are replaced, one character each, the rest of the line is kept
+            var malformed = new byte[] { '(', (byte) 0x80, (byte) 0x80, (byte) 0x80, ')', '0', '-', '>', '0' };
+            var reference = graph(() -> compiler.compile("test", "(\uFFFD\uFFFD\uFFFD)0->0", ""));
+            var input = new ByteArrayInputStream(malformed);
+            if (!reference.equals(graph(() -> compiler.compile("test", Channels.newChannel(input), "")))) {
+                System.err.println("malformed channel compiled differently");
+                errors += 1;
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            errors += 1;
+        }
+        
+        if (errors > 0) {
+            System.err.printf("%n=====  %d  ERRORS  =====%n", errors);
+        } else {
+            System.out.println("\nOK");
+        }
+    }
+    
+    /** Graph of the compiled program, or the message of the compile error. */
+    private static String graph(Callable<Program> compilation) throws IOException {
+        try {
+            var wr = new StringWriter();
+            compilation.call().graph(wr);
+            return wr.toString();
+        } catch (CompileException ex) {
+            return ex.getMessage();
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+    
     private int valid(String code) {
         try {
             compiler.compile(first(code), code, "");
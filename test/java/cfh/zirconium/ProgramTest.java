@@ -0,0 +1,122 @@
+package cfh.zirconium;
+
+import cfh.zirconium.Compiler.CompileException;
+import cfh.zirconium.Environment.*;
+import cfh.zirconium.Program.Stop;
+import cfh.zirconium.Program.Until;
+import cfh.zirconium.engine.FlatEngine;
+
+public class ProgramTest {
+
+    public static void main(String[] args) {
+        var test = new ProgramTest(args == null);
+        test.runTest();
+    }
+
+    private final boolean silent;
+    private final Environment env;
+    private final Compiler compiler;
+
+    private ProgramTest(boolean silent) {
+        this.silent = silent;
+        env = new Environment(printer, input, output, output);
+        compiler = new Compiler(env);
+    }
+
+    private void runTest() {
+        var numbers = """
+               ~
+            @-{`}
+               ~
+            """;
+        var halt = """
+               ~
+            @-{!}
+               ~
+            """;
+        var nop = "0";
+        var errors = 0;
+        errors += run("numbers", numbers, 100, Until.HALT, 100, Stop.TICKS);
+        errors += run("numbers", numbers, 100, Until.HALT.quiescent(), 2, Stop.QUIESCENT);
+        errors += run("numbers", numbers, 100, Until.HALT.output(5), 4, Stop.OUTPUT);
+        errors += run("numbers", numbers, 5, Until.HALT.output(100), 5, Stop.TICKS);
+        errors += run("numbers", numbers, 100, Until.HALT.when(p -> p.ticks() == 7), 7, Stop.CONDITION);
+        errors += run("halt", halt, 100, Until.HALT, 2, Stop.HALTED);
+        errors += run("halt", halt, 100, Until.HALT.quiescent(), 2, Stop.HALTED);
+        errors += run("nop", nop, 100, Until.HALT.quiescent(), 1, Stop.QUIESCENT);
+        errors += run("nop", nop, 100, Until.HALT, 100, Stop.TICKS);
+
+        if (errors > 0) {
+            System.err.printf("%n=====  %d  ERRORS  =====%n", errors);
+        } else {
+            System.out.println("\nOK");
+        }
+    }
+
+    /** Runs the code twice: using the station objects and the flat engine. */
+    private int run(String name, String code, long count, Until until, long ticks, Stop reason) {
+        try {
+            var program = compiler.compile(name, code, "");
+            var errors = run(program, count, until, ticks, reason);
+            program.engine(FlatEngine::new);
+            errors += run(program, count, until, ticks, reason);
+            return errors;
+        } catch (CompileException ex) {
+            ex.printStackTrace();
+            System.err.printf("Unexpected %s: %s for %n%s%n", ex.getClass().getSimpleName(), ex.getMessage(), code);
+            return 1;
+        }
+    }
+
+    private int run(Program program, long count, Until until, long ticks, Stop reason) {
+        program.reset();
+        var result = program.run(count, until);
+        var engine = program.engine() == null ? "stations" : "engine";
+        if (result.ticks() != ticks || result.reason() != reason || program.ticks() != ticks) {
+            System.err.printf("%s (%s) %s: expected %d %s, actual %s, %d ticks%n",
+                program.name(), engine, until, ticks, reason, result, program.ticks());
+            return 1;
+        }
+        if (!silent) {
+            System.out.printf("%s (%s): %s, output %d%n", program.name(), engine, result, env.written());
+        }
+        return 0;
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    private static final Printer printer = new Printer() {
+        @Override
+        public void print(String format, Object... args) {
+            //
+        }
+    };
+    private static final Input input = new Input() {
+        @Override
+        public void reset() {
+            //
+        }
+        @Override
+        public int readByte() {
+            return 0;
+        }
+        @Override
+        public int readInteger() {
+            return 0;
+        }
+    };
+    private static final Output output = new Output() {
+        @Override
+        public void reset() {
+            //
+        }
+        @Override
+        public void write(String text) {
+            //
+        }
+        @Override
+        public void write(int b) {
+            //
+        }
+    };
+}
@@ -10,6 +10,8 @@ public class ZoneDetectorTest {
         var test = new ZoneDetectorTest(args == null);
         test.testW();
         test.test();
+        test.large();
+        test.sparse();
         
         if (test.errors > 0) {
             System.err.printf("%n=====  ERRORS: %d  =====%n", test.errors);
@@ -140,6 +142,66 @@ public class ZoneDetectorTest {
       }
     }
     
+    private void large() {
+        // exclusion zone and metropolis side by side, must be linear in the map size
+        var half = 1000;
+        var code = new StringBuilder();
+        var edge = " " + "~".repeat(half) + "  " + "=".repeat(half) + " ";
+        code.append(edge).append("\n");
+        for (var y = 0; y < 2*half; y++) {
+            code.append("{").append("a".repeat(half)).append("}[").append("A".repeat(half)).append("]\n");
+        }
+        code.append(edge);
+        var parsed = parse(code.toString());
+        try {
+            var start = System.nanoTime();
+            var zones = new ZoneDetector(parsed.chars).detect();
+            var time = (System.nanoTime() - start) / 1_000_000;
+            errors += parsed.check(zones);
+            if (!silent) {
+                System.out.printf("%d x %d map in %d ms%n", parsed.cols, parsed.rows, time);
+            }
+        } catch (CompileException ex) {
+            ex.printStackTrace();
+            errors += 1;
+        }
+    }
+    
+    private void sparse() {
+        // wide and mostly blank, only the chunks with content are allocated
+        var rows = 1000;
+        var cols = 100_000;
+        var chars = Grid.chars(rows, cols);
+        var zone = " ~~ \n{aa}\n ~~ ".split("\n");
+        for (var y = 0; y < zone.length; y++) {
+            for (var x = 0; x < zone[y].length(); x++) {
+                if (zone[y].charAt(x) != 'a') {
+                    chars.set(cols/2 + x, rows/2 + y, zone[y].charAt(x));
+                }
+            }
+        }
+        try {
+            var zones = new ZoneDetector(chars).detect();
+            for (var x = 0; x < 2; x++) {
+                if (zones.zone(cols/2 + 1 + x, rows/2 + 1) != Zone.EXCLUSION) {
+                    System.err.printf("expected EXCLUSION at [%d,%d]%n", cols/2 + 1 + x, rows/2 + 1);
+                    errors += 1;
+                }
+            }
+            if (zones.zone(0, 0) != Zone.NONE || zones.zone(cols/2, rows/2 + 1) != Zone.NONE) {
+                System.err.println("expected NONE outside zone");
+                errors += 1;
+            }
+            if (chars.allocated() > 3 || zones.allocated() > 1) {
+                System.err.printf("sparse: %d chunks of characters, %d chunks of zones%n", chars.allocated(), zones.allocated());
+                errors += 1;
+            }
+        } catch (CompileException ex) {
+            ex.printStackTrace();
+            errors += 1;
+        }
+    }
+    
     private int invalid(String code) {
         var parsed = parse(code);
         
@@ -158,7 +220,7 @@ public class ZoneDetectorTest {
     private int exclusionZone(String code) {
         var parsed = parse(code);
         
-        Zone[][] zones;
+        Grid zones;
         try {
             zones = new ZoneDetector(parsed.chars).detect();
         } catch (CompileException ex) {
@@ -174,11 +236,10 @@ public class ZoneDetectorTest {
         var rows = lines.length;
         var cols = Arrays.stream(lines).mapToInt(String::length).max().orElse(0);
         
-        var chars = new char[rows][cols];
+        var chars = Grid.chars(rows, cols);
         var expected = new Zone[rows][cols];
         for (var y = 0; y < rows; y++) {
             var line = lines[y];
-            Arrays.fill(chars[y], ' ');
             Arrays.fill(expected[y], Zone.NONE);
             for (var x = 0; x < line.length(); x++) {
                 var ch = line.charAt(x);
@@ -188,7 +249,7 @@ public class ZoneDetectorTest {
                     expected[y][x] = Zone.METROPOLIS;
                 } else {
                     expected[y][x] = Zone.NONE;
-                    chars[y][x] = ch;
+                    chars.set(x, y, ch);
                 }
             }
         }
@@ -200,14 +261,14 @@ public class ZoneDetectorTest {
     record Parsed(
         int rows,
         int cols,
-        char[][] chars,
+        Grid chars,
         Zone[][] expected) {
         
-        int check(Zone[][] zones) {
+        int check(Grid zones) {
             for (var y = 0; y < rows; y++) {
                 for (var x = 0; x < cols; x++) {
-                    if (zones[y][x] != expected[y][x]) {
-                            System.err.printf("expected %s at [%d,%d]: %s%n", expected[y][x], x, y, zones[y][x]);
+                    if (zones.zone(x, y) != expected[y][x]) {
+                            System.err.printf("expected %s at [%d,%d]: %s%n", expected[y][x], x, y, zones.zone(x, y));
                             return 1;
                     }
                 }
@@ -0,0 +1,79 @@
+package cfh.zirconium.engine;
+
+import cfh.zirconium.Compiler;
+import cfh.zirconium.Compiler.CompileException;
+import cfh.zirconium.Environment;
+import cfh.zirconium.Environment.*;
+
+/** Rough timing of the delay lines: wires of relays executed by the flat and the delay engine. */
+public class DelayProbe {
+
+    private static final int WIRES = 50;
+    private static final int RELAYS = 400;
+    private static final int TICKS = 20_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws CompileException {
+        var code = new StringBuilder();
+        for (var w = 0; w < WIRES; w++) {
+            code.append('@');
+            for (var r = 0; r < RELAYS; r++) {
+                code.append(r % 10 == 5 ? "->." : "->o");
+            }
+            code.append("->0\n\n");
+        }
+        var env = new Environment(printer, input, output, output);
+        var program = new Compiler(env).compile("wires", code.toString(), "");
+        var network = Network.of(program.stations());
+        var flat = new FlatEngine(network, env);
+        var delay = new DelayEngine(network, env);
+        System.out.printf("%d stations, %d chains, %d ticks%n", network.size(), delay.chains(), TICKS);
+        for (var round = 0; round < ROUNDS; round++) {
+            System.out.printf("  flat %5d ms, delay %5d ms%n", time(flat), time(delay));
+        }
+    }
+
+    private static long time(Engine engine) {
+        engine.reset();
+        var start = System.nanoTime();
+        for (var tick = 0; tick < TICKS; tick++) {
+            engine.step();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static final Printer printer = new Printer() {
+        @Override
+        public void print(String format, Object... args) {
+            //
+        }
+    };
+    private static final Input input = new Input() {
+        @Override
+        public void reset() {
+            //
+        }
+        @Override
+        public int readByte() {
+            return 0;
+        }
+        @Override
+        public int readInteger() {
+            return 0;
+        }
+    };
+    private static final Output output = new Output() {
+        @Override
+        public void reset() {
+            //
+        }
+        @Override
+        public void write(String text) {
+            //
+        }
+        @Override
+        public void write(int b) {
+            //
+        }
+    };
+}
@@ -0,0 +1,608 @@
+package cfh.zirconium.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import cfh.zirconium.Compiler;
+import cfh.zirconium.Compiler.CompileException;
+import cfh.zirconium.Environment;
+import cfh.zirconium.Environment.Input;
+import cfh.zirconium.Environment.Output;
+import cfh.zirconium.Environment.Printer;
+import cfh.zirconium.Program;
+import cfh.zirconium.net.Single;
+import cfh.zirconium.net.Station;
+
+/** Compares the engines tick by tick against the station objects, using the maps in {@code test/maps}. */
+public class EngineTest {
+
+    private static final Path MAPS = Path.of("test/maps");
+    private static final int TICKS = 300;
+
+    public static void main(String[] args) {
+        var test = new EngineTest(args == null);
+        test.maps("flat", FlatEngine::new);
+        test.maps("grouped", GroupedEngine::new);
+        test.maps("delta", DeltaEngine::new);
+        test.maps("delay", DelayEngine::new);
+        test.delay();
+        test.maps("offheap", OffHeapEngine::new);
+        test.offHeap();
+        test.offHeapOther();
+        test.lockstep();
+        test.maps("sparse", SparseEngine::new);
+        test.maps("parallel", (n, e) -> new ParallelEngine(n, e, 3));
+        test.workers();
+        test.maps("wide", WideEngine::new, 40);  // before int overflow of fibo
+        test.wide();
+        test.maps("cycle", CycleEngine::new);
+        test.advance("cycle", CycleEngine::new, 5000);
+        test.maps("linear", LinearEngine::new, 40);
+        test.advance("linear", LinearEngine::new, 40);
+        test.linear();
+        test.linearOpen();
+        test.weighted();
+
+        if (test.errors == 0) {
+            System.out.println("\nOK");
+        } else {
+            System.err.printf("%nerrors: %d%n", test.errors);
+        }
+    }
+
+    private final boolean silent;
+    private int errors = 0;
+
+    private EngineTest(boolean silent) {
+        this.silent = silent;
+    }
+
+    private void maps(String name, Engine.Factory factory) {
+        maps(name, factory, TICKS);
+    }
+
+    private List<Path> files() {
+        try (var list = Files.list(MAPS)) {
+            return list.filter(p -> p.toString().endsWith(".zc")).sorted().toList();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            errors += 1;
+            return List.of();
+        }
+    }
+
+    private void maps(String name, Engine.Factory factory, int ticks) {
+        for (var file : files()) {
+            try {
+                var reference = new Run(file);
+                var tested = new Run(file);
+                try {
+                    tested.program.engine(factory);
+                    errors += compare(name, reference, tested, ticks);
+                } finally {
+                    tested.program.engine(null);  // closes the engine
+                }
+            } catch (CompileException ex) {
+                if (!silent) {
+                    System.out.printf("%s: skipped %s: %s%n", name, file, ex.getMessage());
+                }
+            } catch (Exception ex) {
+                errors += 1;
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /** Compares the state after advancing given ticks at once with stepping the station objects. */
+    private void advance(String name, Engine.Factory factory, int ticks) {
+        var skipped = 0;
+        for (var file : files()) {
+            try {
+                var reference = new Run(file);
+                var tested = new Run(file);
+                try {
+                    tested.program.engine(factory);
+                    var title = name + " " + file;
+                    reference.program.reset();
+                    tested.program.reset();
+                    for (var tick = 0; tick < ticks && !reference.halted(); tick++) {
+                        reference.program.step();
+                    }
+                    var start = System.nanoTime();
+                    tested.program.advance(ticks);
+                    var time = System.nanoTime() - start;
+                    tested.program.sync();
+                    if (tested.program.ticks() != reference.program.ticks()) {
+                        throw new Exception(String.format("%s: expected %d ticks, actual %d", title, reference.program.ticks(), tested.program.ticks()));
+                    }
+                    for (var i = 0; i < reference.singles.size(); i++) {
+                        var ref = reference.singles.get(i);
+                        var test = tested.singles.get(i);
+                        if (test.drones() != ref.drones() || test.delta() != ref.delta()) {
+                            throw new Exception(String.format("%s: %s expected %d (%d), actual %d (%d)",
+                                title, ref, ref.drones(), ref.delta(), test.drones(), test.delta()));
+                        }
+                    }
+                    if (!tested.output.equals(reference.output)) {
+                        throw new Exception(String.format("%s: output expected %s, actual %s", title, reference.output, tested.output));
+                    }
+                    if (tested.program.engine() instanceof CycleEngine cycle && cycle.period() > 0
+                        || tested.program.engine() instanceof LinearEngine linear && linear.components() > 0) {
+                        skipped += 1;
+                    }
+                    if (!silent) {
+                        System.out.printf("%s: %d ticks in %d us%n", title, ticks, time / 1000);
+                    }
+                } finally {
+                    tested.program.engine(null);  // closes the engine
+                }
+            } catch (CompileException ex) {
+                // skipped
+            } catch (Exception ex) {
+                errors += 1;
+                ex.printStackTrace();
+            }
+        }
+        if (skipped == 0) {
+            errors += 1;
+            System.err.printf("%s: no map fast-forwarded%n", name);
+        }
+    }
+
+    private int compare(String name, Run reference, Run tested, int ticks) {
+        var title = name + " " + reference.program.name();
+        reference.program.reset();
+        tested.program.reset();
+        for (var tick = 1; tick <= ticks; tick++) {
+            var expected = reference.program.step();
+            var actual = tested.program.step();
+            tested.program.sync();
+            if (actual != expected) {
+                System.err.printf("%s: tick %d: step expected %s, actual %s%n", title, tick, expected, actual);
+                return 1;
+            }
+            if (tested.halted() != reference.halted()) {
+                System.err.printf("%s: tick %d: halted expected %s, actual %s%n", title, tick, reference.halted(), tested.halted());
+                return 1;
+            }
+            for (var i = 0; i < reference.singles.size(); i++) {
+                var ref = reference.singles.get(i);
+                var test = tested.singles.get(i);
+                if (test.drones() != ref.drones() || test.delta() != ref.delta()) {
+                    System.err.printf("%s: tick %d: %s expected %d (%d), actual %d (%d)%n",
+                        title, tick, ref, ref.drones(), ref.delta(), test.drones(), test.delta());
+                    return 1;
+                }
+            }
+            if (!tested.output.equals(reference.output)) {
+                System.err.printf("%s: tick %d: output expected %s, actual %s%n", title, tick, reference.output, tested.output);
+                return 1;
+            }
+            if (reference.halted()) {
+                break;
+            }
+        }
+        if (!silent) {
+            System.out.printf("%s: %d stations, output %d%n", title, reference.singles.size(), reference.output.size());
+        }
+        return 0;
+    }
+
+    private void wide() {
+        // Fibonacci numbers beyond long range
+        try {
+            var run = new Run("fibo", Files.readString(MAPS.resolve("fibo.zc")), "");
+            run.program.engine(WideEngine::new);
+            run.program.reset();
+            for (var tick = 0; tick < 200; tick++) {
+                run.program.step();
+            }
+            var a = BigInteger.ZERO;
+            var b = BigInteger.ONE;
+            for (var value : run.output) {
+                var number = new BigInteger(((String) value).strip());
+                if (!number.equals(b)) {
+                    throw new Exception(String.format("expected: %s, actual: %s, wide fibo", b, number));
+                }
+                var next = a.add(b);
+                a = b;
+                b = next;
+            }
+            if (a.bitLength() < 2*Long.SIZE) {
+                throw new Exception("not wide enough: " + a);
+            }
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    private void linear() {
+        // advancing the linear generator at once against stepping the wide engine
+        try {
+            var file = MAPS.resolve("fiboSilent.zc");
+            var reference = new Run(file);
+            var tested = new Run(file);
+            reference.program.engine(WideEngine::new);
+            tested.program.engine(LinearEngine::new);
+            if (((LinearEngine) tested.program.engine()).components() != 1) {
+                throw new Exception("linear component not found");
+            }
+            var network = Network.of(tested.program.stations());
+            var refNetwork = Network.of(reference.program.stations());
+            reference.program.reset();
+            tested.program.reset();
+            for (var tick = 0; tick < 2000; tick++) {
+                reference.program.step();
+            }
+            tested.program.advance(2000);
+            for (var check = 0; check < 2; check++) {
+                var expected = reference.program.engine();
+                var actual = tested.program.engine();
+                for (var i = 0; i < reference.singles.size(); i++) {
+                    var index = network.index(tested.singles.get(i));
+                    var refIndex = refNetwork.index(reference.singles.get(i));
+                    if (!actual.value(index).equals(expected.value(refIndex)) || actual.previous(index) != expected.previous(refIndex)) {
+                        throw new Exception(String.format("linear %s: expected %s, actual %s",
+                            reference.singles.get(i), expected.value(refIndex), actual.value(index)));
+                    }
+                }
+                reference.program.step();
+                tested.program.step();
+            }
+
+            var start = System.nanoTime();
+            tested.program.reset();
+            tested.program.advance(1_000_000);
+            var time = System.nanoTime() - start;
+            var bits = 0;
+            for (var i = 0; i < tested.singles.size(); i++) {
+                bits = Math.max(bits, tested.program.engine().value(i).bitLength());
+            }
+            if (tested.program.ticks() != 1_000_000 || bits < 690_000) {
+                throw new Exception(String.format("linear: %d ticks, %d bits", tested.program.ticks(), bits));
+            }
+            if (!silent) {
+                System.out.printf("linear %s: %d ticks in %d ms, %d bits%n", file, tested.program.ticks(), time / 1_000_000, bits);
+            }
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    private void linearOpen() {
+        // the Fibonacci generator writing each number, against stepping the wide engine
+        try {
+            var file = MAPS.resolve("fibo.zc");
+            var reference = new Run(file);
+            var tested = new Run(file);
+            reference.program.engine(WideEngine::new);
+            tested.program.engine(LinearEngine::new);
+            if (((LinearEngine) tested.program.engine()).components() != 1) {
+                throw new Exception("open linear component not found");
+            }
+            reference.program.reset();
+            tested.program.reset();
+            for (var tick = 0; tick < 2000; tick++) {
+                reference.program.step();
+            }
+            var start = System.nanoTime();
+            var done = tested.program.advance(2000);
+            var time = System.nanoTime() - start;
+            if (done != 2000 || tested.program.ticks() != 2000) {
+                throw new Exception(String.format("linear %s: %d ticks", file, tested.program.ticks()));
+            }
+            if (!tested.output.equals(reference.output)) {
+                throw new Exception(String.format("linear %s: output expected %d numbers, actual %d",
+                    file, reference.output.size(), tested.output.size()));
+            }
+            tested.program.sync();
+            reference.program.sync();
+            for (var i = 0; i < reference.singles.size(); i++) {
+                var ref = reference.singles.get(i);
+                var test = tested.singles.get(i);
+                if (test.drones() != ref.drones() || test.delta() != ref.delta()) {
+                    throw new Exception(String.format("linear %s: %s expected %d (%d), actual %d (%d)",
+                        file, ref, ref.drones(), ref.delta(), test.drones(), test.delta()));
+                }
+            }
+            if (!silent) {
+                System.out.printf("linear %s: %d ticks in %d ms, %d numbers%n", file, done, time / 1_000_000, tested.output.size());
+            }
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    private void delay() {
+        // a wire of seven relays, with a clamping one in the middle
+        try {
+            var run = new Run(MAPS.resolve("wire.zc"));
+            run.program.engine(DelayEngine::new);
+            var engine = (DelayEngine) run.program.engine();
+            if (engine.chains() != 1) {
+                throw new Exception("delay: chains " + engine.chains());
+            }
+            var end = run.singles.get(run.singles.size()-1);
+            run.program.reset();
+            for (var tick = 1; tick <= 12; tick++) {
+                run.program.step();
+                run.program.sync();
+                var expected = tick >= 8 ? 1 : 0;
+                if (end.drones() != expected) {
+                    throw new Exception(String.format("delay: tick %d: expected %d, actual %d", tick, expected, end.drones()));
+                }
+            }
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    private void lockstep() {
+        // instances with different inputs against a program for each input
+        var halted = 0;
+        for (var file : files()) {
+            try {
+                var references = new ArrayList<Run>();
+                var instances = new ArrayList<Run>();
+                for (var input = 0; input < 5; input++) {
+                    references.add(new Run(file, input));
+                    instances.add(new Run(file, input));
+                }
+                var program = instances.get(0).program;
+                var network = Network.of(program.stations());
+                var lockstep = Lockstep.of(program, instances.stream().map(r -> r.env).toList());
+                references.forEach(r -> r.program.reset());
+                lockstep.reset();
+                for (var tick = 1; tick <= TICKS && lockstep.running() > 0; tick++) {
+                    lockstep.step();
+                    for (var j = 0; j < references.size(); j++) {
+                        var reference = references.get(j);
+                        reference.program.step();
+                        if (reference.halted() != (lockstep.halted(j) != 0)) {
+                            throw new Exception(String.format("lockstep %s: instance %d tick %d: halted expected %s", file, j, tick, reference.halted()));
+                        }
+                        for (var s = 0; s < reference.singles.size(); s++) {
+                            var ref = reference.singles.get(s);
+                            var actual = lockstep.drones(j, network.index(instances.get(j).singles.get(s)));
+                            if (actual != ref.drones()) {
+                                throw new Exception(String.format("lockstep %s: instance %d tick %d: %s expected %d, actual %d",
+                                    file, j, tick, ref, ref.drones(), actual));
+                            }
+                        }
+                    }
+                }
+                for (var j = 0; j < references.size(); j++) {
+                    if (!instances.get(j).output.equals(references.get(j).output)) {
+                        throw new Exception(String.format("lockstep %s: instance %d: output expected %s, actual %s",
+                            file, j, references.get(j).output, instances.get(j).output));
+                    }
+                    if (lockstep.halted(j) != 0) {
+                        halted += 1;
+                    }
+                }
+            } catch (CompileException ex) {
+                // skipped
+            } catch (Exception ex) {
+                errors += 1;
+                ex.printStackTrace();
+            }
+        }
+        if (halted == 0) {
+            errors += 1;
+            System.err.println("lockstep: no instance halted");
+        }
+    }
+
+    private void offHeap() {
+        // mapped state, saved and loaded again
+        try {
+            var file = Files.createTempFile("zirconium", ".state");
+            try {
+                var run = new Run(MAPS.resolve("fibo.zc"));
+                run.program.engine(OffHeapEngine.mapped(file));
+                run.program.reset();
+                for (var tick = 0; tick < 10; tick++) {
+                    run.program.step();
+                }
+                var engine = (OffHeapEngine) run.program.engine();
+                var saved = new ByteArrayOutputStream();
+                engine.save(Channels.newChannel(saved));
+                if (Files.size(file) != saved.size()) {
+                    throw new Exception(String.format("offheap: file %d bytes, saved %d bytes", Files.size(file), saved.size()));
+                }
+                var expected = new ArrayList<Integer>();
+                for (var tick = 0; tick < 10; tick++) {
+                    run.program.step();
+                }
+                for (var i = 0; i < run.singles.size(); i++) {
+                    expected.add(engine.drones(i));
+                }
+                engine.load(Channels.newChannel(new ByteArrayInputStream(saved.toByteArray())));
+                for (var tick = 0; tick < 10; tick++) {
+                    run.program.step();
+                }
+                for (var i = 0; i < run.singles.size(); i++) {
+                    if (engine.drones(i) != expected.get(i)) {
+                        throw new Exception(String.format("offheap: station %d: expected %d, actual %d", i, expected.get(i), engine.drones(i)));
+                    }
+                }
+                run.program.engine(null);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    private void workers() {
+        // closed parallel engines leave no worker threads
+        var alive = Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().startsWith("engine-"))
+            .count();
+        if (alive > 0) {
+            errors += 1;
+            System.err.printf("parallel: %d worker threads alive%n", alive);
+        }
+    }
+
+    private void offHeapOther() {
+        // image of another network with the same number of stations, groups and links
+        try {
+            var saving = new Run("dot", "0<.>0", "");
+            var loading = new Run("dup", "0<o>0", "");
+            saving.program.engine(OffHeapEngine::new);
+            loading.program.engine(OffHeapEngine::new);
+            var saved = new ByteArrayOutputStream();
+            ((OffHeapEngine) saving.program.engine()).save(Channels.newChannel(saved));
+            try {
+                ((OffHeapEngine) loading.program.engine()).load(Channels.newChannel(new ByteArrayInputStream(saved.toByteArray())));
+                errors += 1;
+                System.err.println("offheap: loaded state of another network");
+            } catch (IOException expected) {
+                if (!silent) {
+                    System.out.println("offheap: " + expected.getMessage());
+                }
+            }
+            saving.program.engine(null);
+            loading.program.engine(null);
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    private void weighted() {
+        // bound station linked twice to the same station
+        try {
+            var run = new Run(MAPS.resolve("weighted.zc"));
+            var network = Network.of(run.program.stations());
+            var top = run.singles.get(0);
+            var group = network.group[network.index(run.singles.get(1))];
+            var links = network.links[group+1] - network.links[group];
+            if (links != 1 || network.weights[network.links[group]] != 2 || network.countLinked(group) != 2) {
+                throw new Exception(String.format("weighted: %d links, K %d", links, network.countLinked(group)));
+            }
+            int[] expected = { 4, 4, 4, 4 };
+            for (var engine : List.<Engine.Factory>of(FlatEngine::new, WideEngine::new)) {
+                run.program.engine(engine);
+                run.program.reset();
+                for (var tick = 0; tick < expected.length; tick++) {
+                    run.program.step();
+                    run.program.sync();
+                    if (top.drones() != expected[tick]) {
+                        throw new Exception(String.format("weighted: tick %d: expected %d, actual %d", tick+1, expected[tick], top.drones()));
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    //----------------------------------------------------------------------------------------------
+
+    /** A program with its own environment. */
+    private static class Run {
+        final List<Object> output = new ArrayList<>();
+        final Environment env;
+        final Program program;
+        final List<Single> singles;
+
+        /** Compiles the map in given file and its header file, if any. */
+        Run(Path file) throws CompileException, IOException {
+            this(file, 0);
+        }
+
+        /** Compiles the map in given file, the input sequence starting at given offset. */
+        Run(Path file, int input) throws CompileException, IOException {
+            this(file.toString(), Files.readString(file), header(file), input);
+        }
+
+        Run(String name, String code, String header) throws CompileException {
+            this(name, code, header, 0);
+        }
+
+        private Run(String name, String code, String header, int input) throws CompileException {
+            var out = new OutputMock(output);
+            env = new Environment(new PrinterMock(), new InputMock(input), out, out);
+            program = new Compiler(env).compile(name, code, header);
+            singles = program.stations().stream()
+                .flatMap(Station::stations)
+                .sorted(Comparator.comparing(Single::pos))
+                .toList();
+        }
+
+        private static String header(Path file) throws IOException {
+            var header = Path.of(file.toString() + "h");
+            return Files.exists(header) ? Files.readString(header) : "";
+        }
+
+        boolean halted() {
+            return env.halted();
+        }
+    }
+
+    private static class PrinterMock implements Printer {
+        @Override
+        public void print(String format, Object... args) {
+            //
+        }
+    }
+
+    /** Repeats the same input sequence after each reset. */
+    private static class InputMock implements Input {
+        private final int start;
+        private int count;
+        InputMock(int start) {
+            this.start = start;
+            count = start;
+        }
+        @Override
+        public void reset() {
+            count = start;
+        }
+        @Override
+        public int readByte() {
+            return count++ % 2 == 0 ? '1' : '0';
+        }
+        @Override
+        public int readInteger() {
+            return count++ % 5;
+        }
+    }
+
+    private static class OutputMock implements Output {
+        private final List<Object> values;
+        OutputMock(List<Object> values) {
+            this.values = Objects.requireNonNull(values);
+        }
+        @Override
+        public void reset() {
+            values.clear();
+        }
+        @Override
+        public void write(String text) {
+            values.add(text);
+        }
+        @Override
+        public void write(int b) {
+            values.add(b);
+        }
+    }
+}
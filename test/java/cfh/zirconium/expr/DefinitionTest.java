@@ -1,5 +1,7 @@
 package cfh.zirconium.expr;
 
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 import cfh.zirconium.Compiler.CompileException;
@@ -95,6 +97,45 @@ public class DefinitionTest {
             errors += calculate(expr, n, k, expected);
         }
         
+        for (var expr : """
+            a = N
+            b = K 7 -
+            c = N K * 1000 *
+            d = N 0 / K 3 / +
+            e = N K = 300 *
+            f = N 2147483647 + 65536 -
+            g = N N = 1 - K N / 128 * +
+            """.split("\n"))
+        {
+            errors += compiled(expr);
+        }
+        errors += lazy("z = N K * 12345 + 678 *");
+        
+        // expr [K] : specialized
+        for (var test : """
+            a = 1 N 0 = - 72 * [3] : 1 N 0 = - 72 *
+            b = N 48 = [1] : N 48 =
+            c = N 49 = 49 * [2] : N 49 = 49 *
+            d = K 2 * N + [3] : 6 N +
+            e = N K * [0] : 0
+            f = N K / [1] : N
+            g = N N = [5] : 1
+            h = N N / 10 * [5] : 1 N 0 = - 10 *
+            i = N 0 = 0 = 7 * [2] : 1 N 0 = - 7 *
+            j = K 0 = N * [1] : 0
+            k = N K - 0 + [0] : N
+            l = 12 N * N / [4] : 12 N * N /
+            m = N 3 = 5 * 2 / K 1 - = [3] : N 3 =
+            """.split("\n"))
+        {
+            var i = test.indexOf('[');
+            var j = test.indexOf(']');
+            var expr = test.substring(0, i);
+            var k = Integer.parseInt(test.substring(i+1, j));
+            var expected = test.substring(test.indexOf(':', j)+1).strip();
+            errors += specialize(expr, k, expected);
+        }
+        
         if (errors > 0) {
             System.err.printf("%n=====  %d  ERRORS  =====%n", errors);
         } else {
@@ -128,6 +169,94 @@ public class DefinitionTest {
         }
     }
     
+    /** Compares the specialized expression and its result with the original expression. */
+    private int specialize(String expr, int k, String expected) {
+        try {
+            var def = Definition.parse(new Pos(0, 0), expr);
+            var specialized = def.expr.specialize(k).toString();
+            if (!specialized.equals(expected)) {
+                System.err.printf("specialized \"%s\", expected \"%s\", for \"%s\" with k=%d%n",
+                    specialized, expected, expr, k);
+                return 1;
+            }
+            var spec = def.specialize(k);
+            int[] values = { 0, 1, 2, 3, 48, 49, 255, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+            for (var n : values) {
+                if (spec.calculate(n, k) != def.calculate(n, k)) {
+                    System.err.printf("specialized %d, expected %d, for \"%s\" with n=%d, k=%d%n",
+                        spec.calculate(n, k), def.calculate(n, k), expr, n, k);
+                    return 1;
+                }
+            }
+            return 0;
+        } catch (CompileException ex) {
+            System.err.printf("Unexpected for \"%s\", %s: %s%n",
+                expr, ex.getClass().getSimpleName(), ex.getMessage());
+            return 1;
+        }
+    }
+    
+    /** Checks that an expression is only compiled when first calculated. */
+    private int lazy(String expr) {
+        try {
+            var count = Definition.compiledCount();
+            var def = Definition.parse(new Pos(0, 0), expr);
+            if (Definition.compiledCount() != count) {
+                System.err.printf("compiled by parse: \"%s\"%n", expr);
+                return 1;
+            }
+            def.calculate(1, 2);
+            if (Definition.compiledCount() != count + 1) {
+                System.err.printf("not compiled by calculate: \"%s\"%n", expr);
+                return 1;
+            }
+            return 0;
+        } catch (CompileException ex) {
+            System.err.printf("Unexpected for \"%s\", %s: %s%n",
+                expr, ex.getClass().getSimpleName(), ex.getMessage());
+            return 1;
+        }
+    }
+    
+    /** Compares the compiled expression and the postfix program with the tree walk. */
+    private int compiled(String expr) {
+        try {
+            var def = Definition.parse(new Pos(0, 0), expr);
+            if (!def.evaluator().getClass().isHidden()) {
+                System.err.printf("not compiled: \"%s\"%n", expr);
+                return 1;
+            }
+            var postfix = Postfix.of(def.expr);
+            if (!Arrays.equals(def.postfix().code(), postfix.code())) {
+                System.err.printf("parsed postfix %s, expected %s, for \"%s\"%n", def.postfix(), postfix, expr);
+                return 1;
+            }
+            int[] values = { 0, 1, 2, 3, 7, 255, 256, -1, -7, Integer.MAX_VALUE, Integer.MIN_VALUE };
+            for (var n : values) {
+                for (var k : values) {
+                    var expected = def.expr.calculate(n, k);
+                    var result = def.calculate(n, k);
+                    if (result != expected) {
+                        System.err.printf("compiled %d, expected %d, for \"%s\" with n=%d, k=%d%n",
+                            result, expected, expr, n, k);
+                        return 1;
+                    }
+                    result = postfix.applyAsInt(n, k);
+                    if (result != expected) {
+                        System.err.printf("postfix %d, expected %d, for \"%s\" with n=%d, k=%d%n",
+                            result, expected, expr, n, k);
+                        return 1;
+                    }
+                }
+            }
+            return 0;
+        } catch (CompileException ex) {
+            System.err.printf("Unexpected for \"%s\", %s: %s%n",
+                expr, ex.getClass().getSimpleName(), ex.getMessage());
+            return 1;
+        }
+    }
+    
     private int calculate(String expr, int n, int k, int expected) {
         try {
             var def = Definition.parse(new Pos(0, 0), expr);
@@ -136,9 +265,15 @@ public class DefinitionTest {
                 System.err.printf("calculated %d, expected %d, for \"%s\" with n=%d, k=%d%n", 
                     result, expected, expr, n, k);
                 return 1;
-            } else {
-                return 0;
             }
+            var wide = def.calculate((long) n, (long) k);
+            var big = def.calculate(BigInteger.valueOf(n), BigInteger.valueOf(k));
+            if (wide != expected || big.intValueExact() != expected) {
+                System.err.printf("calculated %d (long), %s (big), expected %d, for \"%s\" with n=%d, k=%d%n", 
+                    wide, big, expected, expr, n, k);
+                return 1;
+            }
+            return 0;
         } catch (CompileException ex) {
             System.err.printf("Unexpected for \"%s\", %s: %s%n",
                 expr, ex.getClass().getSimpleName(), ex.getMessage());
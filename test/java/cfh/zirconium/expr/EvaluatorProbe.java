@@ -0,0 +1,55 @@
+package cfh.zirconium.expr;
+
+import java.util.function.IntBinaryOperator;
+
+import cfh.zirconium.Compiler.CompileException;
+import cfh.zirconium.net.Pos;
+
+/** Rough timing of the expression evaluators: tree walk, postfix program and compiled class. */
+public class EvaluatorProbe {
+
+    private static final int COUNT = 5_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws CompileException {
+        var texts = """
+            H = 1 N 0 = - 72 *
+            e = 1 N 0 = - 101 *
+            x = 12 N * N /
+            y = N 1 + N * N /
+            z = N K + 10 * N 3 / - K N = +
+            s = N 20 /
+            0 = N 48 =
+            1 = N 49 = 49 *
+            """.split("\n");
+        var trees = new IntBinaryOperator[texts.length];
+        var postfixes = new IntBinaryOperator[texts.length];
+        var compiled = new IntBinaryOperator[texts.length];
+        for (var i = 0; i < texts.length; i++) {
+            var def = Definition.parse(new Pos(0, 0), texts[i]);
+            trees[i] = def.expr::calculate;
+            postfixes[i] = Postfix.of(def.expr);
+            compiled[i] = def.evaluator();
+        }
+        System.out.printf("%d definitions, %d evaluations each%n", texts.length, COUNT);
+        for (var round = 0; round < ROUNDS; round++) {
+            System.out.printf("  tree %5d ms, postfix %5d ms, compiled %5d ms%n", time(trees), time(postfixes), time(compiled));
+        }
+    }
+
+    /** Evaluates all definitions in turn, as a map with several synthetic stations. */
+    private static long time(IntBinaryOperator[] evaluators) {
+        var start = System.nanoTime();
+        var sum = 0;
+        for (var i = 0; i < COUNT; i++) {
+            for (var evaluator : evaluators) {
+                sum += evaluator.applyAsInt(i & 255, i & 7);
+            }
+        }
+        var time = (System.nanoTime() - start) / 1_000_000;
+        if (sum == 42) {
+            System.out.println();
+        }
+        return time;
+    }
+}
@@ -1,9 +1,13 @@
 package cfh.zirconium.net;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import cfh.zirconium.Compiler;
@@ -25,12 +29,14 @@ public class StationTest {
         test.tunnelCrossing();
         test.aperture();
         test.boundStation();
+        test.boundGrouping();
         test.syntax();
         test.exclusionZone();
         test.defectStation();
         test.metropolis();
         test.syntheticStation();
         test.zoneInference();
+        test.ordering();
         if (test.errors == 0) {
             System.out.println("\nOK");
         } else {
@@ -72,7 +78,7 @@ public class StationTest {
             assertEquals(0, dot.drones(), program.name() + ": dot- after first step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after first step");
-            dot.receive(5);
+            receive(dot, 5);
             program.step();
             assertEquals(0, dot.drones(), program.name() + ": dot- after second step");
             assertEquals(1, nop1.drones(), program.name() + ": nop1 - after second step");
@@ -101,7 +107,7 @@ public class StationTest {
             assertEquals(0, dup.drones(), program.name() + ": o - after first step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after first step");
-            dup.receive(3);
+            receive(dup, 3);
             program.step();
             assertEquals(0, dup.drones(), program.name() + ": o - after second step");
             assertEquals(3, nop1.drones(), program.name() + ": nop1 - after second step");
@@ -130,7 +136,7 @@ public class StationTest {
             assertEquals(0, nop.drones(), program.name() + ": 0 - after first step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after first step");
-            nop.receive(3);
+            receive(nop, 3);
             program.step();
             assertEquals(0, nop.drones(), program.name() + ": 0 - after second step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after second step");
@@ -156,7 +162,7 @@ public class StationTest {
             assertEquals(0, split.drones(), program.name() + ": O - after first step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after first step");
-            split.receive(5);
+            receive(split, 5);
             program.step();
             assertEquals(0, split.drones(), program.name() + ": O - after second step");
             assertEquals(2, nop1.drones(), program.name() + ": nop1 - after second step");
@@ -185,7 +191,7 @@ public class StationTest {
             assertEquals(0, dec.drones(), program.name() + ": Q - after first step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after first step");
-            dec.receive(5);
+            receive(dec, 5);
             program.step();
             assertEquals(0, dec.drones(), program.name() + ": Q - after second step");
             assertEquals(4, nop1.drones(), program.name() + ": nop1 - after second step");
@@ -214,12 +220,12 @@ public class StationTest {
             assertEquals(0, create.drones(), program.name() + ": @ - after first step");
             assertEquals(1, nop1.drones(), program.name() + ": nop1 - after first step");
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after first step");
-            create.receive(1);
+            receive(create, 1);
             program.step();
             assertEquals(0, create.drones(), program.name() + ": @ - after second step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after second step");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after second step");
-            create.receive(3);
+            receive(create, 3);
             program.step();
             assertEquals(0, create.drones(), program.name() + ": @ - after third step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after third step");
@@ -247,7 +253,7 @@ public class StationTest {
             program.step();
             assertEquals(0, create.drones(), program.name() + ": @ - after second step");
             assertEquals(1, nop.drones(), program.name() + ": nop - after second step");
-            create.receive(1);
+            receive(create, 1);
             program.step();
             assertEquals(0, create.drones(), program.name() + ": @ - after third step");
             assertEquals(0, nop.drones(), program.name() + ": nop - after third step");
@@ -276,7 +282,7 @@ public class StationTest {
             program.step();
             assertEquals(0, create.drones(), program.name() + ": @ - after second step");
             assertEquals(1, nop.drones(), program.name() + ": nop - after second step");
-            create.receive(1);
+            receive(create, 1);
             program.step();
             assertEquals(0, create.drones(), program.name() + ": @ - after third step");
             assertEquals(0, nop.drones(), program.name() + ": nop - after third step");
@@ -309,7 +315,7 @@ public class StationTest {
             assertEquals(0, create.drones(), program.name() + ": @ - after second step");
             assertEquals(1, nop1.drones(), program.name() + ": nop1 - after second step");
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after second step");
-            create.receive(1);
+            receive(create, 1);
             program.step();
             assertEquals(0, create.drones(), program.name() + ": @ - after third step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after third step");
@@ -351,13 +357,13 @@ public class StationTest {
             assertEquals(0, create2.drones(), program.name() + ": @2 - after reset");
             assertEquals(1, nop1.drones(), program.name() + ": nop1 - after second step");
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after second step");
-            create1.receive(1);
+            receive(create1, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after third step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after reset");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after third step");
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after third step");
-            create2.receive(1);
+            receive(create2, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after third step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after reset");
@@ -397,13 +403,13 @@ public class StationTest {
             assertEquals(0, create2.drones(), program.name() + ": @2 - after second step");
             assertEquals(1, nop1.drones(), program.name() + ": nop1 - after second step");
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after second step");
-            create1.receive(1);
+            receive(create1, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after third step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after third step");
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after third step");
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after third step");
-            create2.receive(1);
+            receive(create2, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after fourth step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after fourth step");
@@ -459,7 +465,7 @@ public class StationTest {
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after second step");
             assertEquals(1, nop3.drones(), program.name() + ": nop3 - after second step");
             assertEquals(1, nop4.drones(), program.name() + ": nop4 - after second step");
-            create1.receive(1);
+            receive(create1, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after third step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after thrid step");
@@ -469,7 +475,7 @@ public class StationTest {
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after third step");
             assertEquals(1, nop3.drones(), program.name() + ": nop3 - after third step");
             assertEquals(1, nop4.drones(), program.name() + ": nop4 - after third step");
-            create2.receive(1);
+            receive(create2, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after fourth step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after fourth step");
@@ -479,7 +485,7 @@ public class StationTest {
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after fourth step");
             assertEquals(1, nop3.drones(), program.name() + ": nop3 - after fourth step");
             assertEquals(1, nop4.drones(), program.name() + ": nop4 - after fourth step");
-            create3.receive(1);
+            receive(create3, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after 5th step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after 5th step");
@@ -489,7 +495,7 @@ public class StationTest {
             assertEquals(1, nop2.drones(), program.name() + ": nop2 - after 5th step");
             assertEquals(0, nop3.drones(), program.name() + ": nop3 - after 5th step");
             assertEquals(1, nop4.drones(), program.name() + ": nop4 - after 5th step");
-            create4.receive(1);
+            receive(create4, 1);
             program.step();
             assertEquals(0, create1.drones(), program.name() + ": @1 - after 6th step");
             assertEquals(0, create2.drones(), program.name() + ": @2 - after 6th step");
@@ -740,7 +746,7 @@ public class StationTest {
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after first step");
             assertEquals(0, nop3.drones(), program.name() + ": nop3 - after first step");
-            dup1.receive(15);
+            receive(dup1, 15);
             program.step();
             assertEquals(0, dup1.drones(), program.name() + ": dup1 - after second step");
             assertEquals(15, split1.drones(), program.name() + ": split1 - after second step");
@@ -824,6 +830,35 @@ public class StationTest {
         }
     }
     
+    private void boundGrouping() {
+        // all stations connected by adjacency are one bound station
+        try {
+            var code = """
+                0 0 0
+                0 0 0
+                 0 0
+                  0
+                """;
+            var program = compiler.compile("test.bound.grouping", code, "");
+            assertEquals(1, program.stations().size(), program.name() + ": stations");
+            assertEquals(9, bound(0, 0, program).childs().size(), program.name() + ": childs");
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+        // bound IDs do not run out
+        try {
+            var code = ("00 ".repeat(30) + "\n\n").repeat(10);
+            var program = compiler.compile("test.bound.ids", code, "");
+            var ids = program.stations().stream().map(Object::toString).collect(Collectors.toSet());
+            assertEquals(300, ids.size(), program.name() + ": distinct IDs");
+            assertEquals(true, ids.contains("{A0}") && ids.contains("{Z9}") && ids.contains("{AA0}") && ids.contains("{AD9}"), program.name() + ": " + ids);
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
     private void syntax() {
         // Anything contained between inside parentheses () is a bubble and is ignored.
         try {
@@ -983,18 +1018,18 @@ public class StationTest {
             
             program.reset();
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after reset");
-            in1.receive(1);
+            receive(in1, 1);
             program.step();  // init
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             input.expectByte(3);
-            in1.receive(1);
+            receive(in1, 1);
             program.step();
             assertEquals(3, nop1.drones(), program.name() + ": nop1 - after second step");
             input.expectByte(4);
-            in1.receive(1);
+            receive(in1, 1);
             program.step();
             assertEquals(4, nop1.drones(), program.name() + ": nop1 - after third step");
-            in1.receive(1);
+            receive(in1, 1);
             program.step();
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after fourth step");
         } catch (Exception ex) {
@@ -1016,7 +1051,7 @@ public class StationTest {
             program.step();  // init
             assertEquals(0, halt1.drones(), program.name() + ": halt1 - after first step");
             assertEquals(false, environment.halted(), "halted");
-            halt1.receive(1);
+            receive(halt1, 1);
             program.step();
             assertEquals(true, environment.halted(), "halted");
         } catch (Exception ex) {
@@ -1040,11 +1075,11 @@ public class StationTest {
             program.step();  // init
             assertEquals(0, out1.drones(), program.name() + ": out1 - after first step");
             assertEquals(true, output.isEmpty(), program.name() + ": output empty after first step");
-            out1.receive(123);
+            receive(out1, 123);
             program.step();
             assertEquals(0, out1.drones(), program.name() + ": out1 - after second step");
             assertEquals(123, output.nextInt(), program.name() + ": output after second step");
-            out1.receive(256 + 45);
+            receive(out1, 256 + 45);
             program.step();
             assertEquals(0, out1.drones(), program.name() + ": out1 - after third step");
             assertEquals(45, output.nextInt(), program.name() + ": output after third step");
@@ -1072,11 +1107,11 @@ public class StationTest {
             program.step();  // init
             assertEquals(0, err1.drones(), program.name() + ": err1 - after first step");
             assertEquals(true, error.isEmpty(), program.name() + ": error empty after first step");
-            err1.receive(45);
+            receive(err1, 45);
             program.step();
             assertEquals(0, err1.drones(), program.name() + ": err1 - after second step");
             assertEquals(45, error.nextInt(), program.name() + ": error after second step");
-            err1.receive(256 + 67);
+            receive(err1, 256 + 67);
             program.step();
             assertEquals(0, err1.drones(), program.name() + ": err1 - after third step");
             assertEquals(67, error.nextInt(), program.name() + ": error after third step");
@@ -1104,11 +1139,11 @@ public class StationTest {
             program.step();  // init
             assertEquals(0, out1.drones(), program.name() + ": out1 - after first step");
             assertEquals(true, output.isEmpty(), program.name() + ": output empty after first step");
-            out1.receive(123);
+            receive(out1, 123);
             program.step();
             assertEquals(0, out1.drones(), program.name() + ": out1 - after second step");
             assertEquals("123 ", output.nextString(), program.name() + ": output after second step");
-            out1.receive(456);
+            receive(out1, 456);
             program.step();
             assertEquals(0, out1.drones(), program.name() + ": out1 - after third step");
             assertEquals("456 ", output.nextString(), program.name() + ": output after third step");
@@ -1132,18 +1167,18 @@ public class StationTest {
             
             program.reset();
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after reset");
-//            in1.receive(1);
+//            receive(in1, 1);
             program.step();  // init
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after first step");
             input.expectInt(123);
-            in1.receive(1);
+            receive(in1, 1);
             program.step();
             assertEquals(123, nop1.drones(), program.name() + ": nop1 - after second step");
             input.expectInt(456);
-            in1.receive(1);
+            receive(in1, 1);
             program.step();
             assertEquals(456, nop1.drones(), program.name() + ": nop1 - after third step");
-            in1.receive(1);
+            receive(in1, 1);
             program.step();
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after fourth step");
         } catch (Exception ex) {
@@ -1166,7 +1201,7 @@ public class StationTest {
             var start = System.currentTimeMillis();
             program.step();
             var delta = System.currentTimeMillis() - start;
-            pause1.receive(500);
+            receive(pause1, 500);
             start = System.currentTimeMillis();
             program.step();
             var delay = System.currentTimeMillis() - start - delta;
@@ -1360,7 +1395,7 @@ public class StationTest {
             assertEquals(0, nop1.drones(), program.name() + ": nop1 - after reset");
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after reset");
             program.step();
-            syn1.receive(6);
+            receive(syn1, 6);
             program.step();
             assertEquals(0, syn1.drones(), program.name() + ": syn1 - after first step");
             assertEquals(7, nop1.drones(), program.name() + ": nop1 - after first step");
@@ -1394,7 +1429,7 @@ public class StationTest {
             assertEquals(0, nop2.drones(), program.name() + ": nop2 - after reset");
             assertEquals(0, nop3.drones(), program.name() + ": nop3 - after reset");
             program.step();
-            syn1.receive(6);
+            receive(syn1, 6);
             program.step();
             assertEquals(0, syn1.drones(), program.name() + ": syn1 - after first step");
             assertEquals(5, nop1.drones(), program.name() + ": nop1 - after first step");
@@ -1570,6 +1605,41 @@ public class StationTest {
         return s -> s.pos().x() == x && s.pos().y() == y;
     }
 
+    private void ordering() {
+        // stations exchanging drones get near indices, independent of the creation order
+        try {
+            var code = """
+                0-0-0-0
+                      |
+                0-0-0-0
+                |
+                0-0-0-0   0 0
+                """;
+            var program = compiler.compile("test.ordering.chain", code, "");
+            var order = List.copyOf(program.stations());
+            assertEquals(14, order.size(), program.name() + ": stations");
+            for (var i = 0; i < order.size(); i++) {
+                for (var linked : order.get(i).linked()) {
+                    var distance = Math.abs(order.indexOf(linked) - i);
+                    assertEquals(1, distance, program.name() + ": distance " + order.get(i) + " to " + linked);
+                }
+            }
+            var reversed = new ArrayList<>(order);
+            Collections.reverse(reversed);
+            assertEquals(order.toString(), Ordering.of(reversed).toString(), program.name() + ": reversed");
+            var unlinked = order.subList(0, 2).toString();
+            assertEquals("[0(4,10), 0(4,12)]", unlinked, program.name() + ": unlinked");
+        } catch (Exception ex) {
+            errors += 1;
+            ex.printStackTrace();
+        }
+    }
+
+    /** Adds drones to a station between ticks. */
+    private static void receive(Single station, int number) {
+        station.load(station.drones() + number, station.drones() - station.delta());
+    }
+    
     private Single get(int x, int y, Program program) {
         return get(Single.class, x, y, program);
     }